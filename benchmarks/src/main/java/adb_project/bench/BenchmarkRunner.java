@@ -0,0 +1,38 @@
+/**
+ * <h1>BenchmarkRunner</h1>
+ * Entry point of the benchmarks jar.  Runs the benchmarks matching the
+ * given pattern (all of them by default) with the GC profiler attached,
+ * so every result has its score next to its allocation rate.  Each
+ * benchmark runs in the mode it declares - most report ops/s, while
+ * ScalingBenchmark reports ns per instruction.  Any other JMH option can
+ * still be used by running org.openjdk.jmh.Main from the same jar.
+ * <p>
+ * Usage: java -jar benchmarks/target/benchmarks.jar [pattern] [results.json]
+ */
+
+package adb_project.bench;
+
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include((args.length > 0) ? args[0] : ".*")
+                .addProfiler(GCProfiler.class);
+
+        // Keep the raw numbers so runs before and after a change can be compared
+        if (args.length > 1) {
+            options.resultFormat(ResultFormatType.JSON).result(args[1]);
+        }
+
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * <h1>BenchmarkSupport</h1>
+ * Shared setup for the JMH benchmarks - silencing the engine's console
+ * output and building workloads with a given contention level and
+ * number of failed sites.
+ */
+
+package adb_project.bench;
+
+
+import adb_project.Instruction;
+import adb_project.InstructionBuffer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+
+final class BenchmarkSupport {
+
+    private static final PrintStream DISCARD = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    private static PrintStream console;
+
+
+    private BenchmarkSupport() {
+    }
+
+
+    /**
+     * Sends System.out to nowhere so the engine's printing doesn't end up
+     * in the measurement
+     */
+    static void silence() {
+        if (console == null) {
+            console = System.out;
+        }
+        System.setOut(DISCARD);
+    }
+
+
+    /**
+     * Puts System.out back
+     */
+    static void restore() {
+        if (console != null) {
+            System.setOut(console);
+            console = null;
+        }
+    }
+
+
+    /**
+     * Number of variables transactions pick from for a contention level
+     * @param contention - low, medium or high
+     * @return int - size of the hot set out of the 20 variables
+     */
+    static int hotVariables(String contention) {
+        switch (contention) {
+            case "low":
+                return 20;
+            case "medium":
+                return 8;
+            case "high":
+                return 2;
+            default:
+                throw new IllegalArgumentException("Unknown contention level: " + contention);
+        }
+    }
+
+
+    /**
+     * Builds a workload of interleaved read/write transactions.  The given
+     * number of sites fail before the first transaction begins.  Transactions
+     * are run a few at a time so they overlap and contend for locks
+     * @param transactions - number of transactions
+     * @param contention - low, medium or high
+     * @param failedSites - number of sites that are down
+     * @param seed - random seed
+     * @return InstructionBuffer - the workload
+     */
+    static InstructionBuffer workload(int transactions, String contention, int failedSites, long seed) {
+        Random random = new Random(seed);
+        int hot = hotVariables(contention);
+        int opsPerTransaction = 4;
+        int overlap = 4;
+        InstructionBuffer buffer = new InstructionBuffer();
+
+        for (int site = 1; site <= failedSites; site++) {
+            buffer.add(Instruction.FAIL, site, 0, 0);
+        }
+
+        for (int first = 1; first <= transactions; first += overlap) {
+            int last = Math.min(transactions, first + overlap - 1);
+            for (int id = first; id <= last; id++) {
+                buffer.add(Instruction.BEGIN, id, 0, 0);
+            }
+            for (int op = 0; op < opsPerTransaction; op++) {
+                for (int id = first; id <= last; id++) {
+                    int variable = 1 + random.nextInt(hot);
+                    if (random.nextBoolean()) {
+                        buffer.add(Instruction.READ, id, variable, 0);
+                    } else {
+                        buffer.add(Instruction.WRITE, id, variable, random.nextInt(1000));
+                    }
+                }
+            }
+            for (int id = first; id <= last; id++) {
+                buffer.add(Instruction.END, id, 0, 0);
+            }
+        }
+        return buffer;
+    }
+
+
+    /**
+     * Deletes a directory of log files left by a benchmark
+     * @param directory - flat directory to delete
+     */
+    static void deleteDirectory(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * <h1>DeadlockBenchmark</h1>
+ * Cost of DM.deadLockCheck when the last edge of a waits-for cycle is
+ * added.  Each transaction holds a write lock and waits on the next
+ * one, so the search walks the whole chain before the youngest
+ * transaction is aborted and the remaining waiters are released.
+ * DM.detectDeadlocks breaks the same cycle with a pass over the whole
+ * graph.
+ */
+
+package adb_project.bench;
+
+
+import adb_project.DM;
+import adb_project.Instruction;
+import adb_project.Topology;
+import adb_project.Transaction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeadlockBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int transactions;
+
+    @Param({"0", "3"})
+    public int failedSites;
+
+    private DM dm;
+    private Transaction last;
+
+
+    @Setup(Level.Trial)
+    public void silence() {
+        BenchmarkSupport.silence();
+    }
+
+
+    @TearDown(Level.Trial)
+    public void restore() {
+        BenchmarkSupport.restore();
+    }
+
+
+    /**
+     * Builds the chain T1 -> T2 -> ... -> Tn and has Tn wait on T1.  Only
+     * the odd variables are used so each lock lives on a single site, and
+     * failed sites are picked so they don't hold any of them
+     */
+    @Setup(Level.Invocation)
+    public void buildCycle() {
+        Topology topology = new Topology(10, 4 * transactions + 20, 2);
+        dm = new DM(topology);
+
+        for (int site = 1; site <= failedSites; site++) {
+            dm.fail(new Instruction(Instruction.FAIL, site, 0, 0));
+        }
+
+        Transaction[] chain = new Transaction[transactions];
+        for (int i = 0; i < transactions; i++) {
+            chain[i] = new Transaction(i + 1, false, i + 1, null);
+            write(chain[i], variableFor(i, topology, failedSites));
+        }
+        for (int i = 0; i < transactions - 1; i++) {
+            write(chain[i], variableFor(i + 1, topology, failedSites));
+            dm.deadLockCheck(chain[i]);
+        }
+
+        last = chain[transactions - 1];
+        write(last, variableFor(0, topology, failedSites));
+    }
+
+
+    /**
+     * Gets the i-th odd variable whose home site is up
+     * @param i - index
+     * @param topology - database layout
+     * @param failedSites - sites 1 to failedSites are down
+     * @return int - variable ID
+     */
+    private static int variableFor(int i, Topology topology, int failedSites) {
+        int found = -1;
+        for (int v = 1; ; v += 2) {
+            if (topology.getHomeSite(v) > failedSites && ++found == i) {
+                return v;
+            }
+        }
+    }
+
+
+    private void write(Transaction T, int variable) {
+        Instruction I = new Instruction(Instruction.WRITE, T.getID(), variable, T.getID());
+        T.addCurrentInstruction(I);
+        dm.write(T, I);
+    }
+
+
+    @Benchmark
+    public void deadLockCheck() {
+        dm.deadLockCheck(last);
+    }
+
+
+    @Benchmark
+    public void detectDeadlocks() {
+        dm.detectDeadlocks();
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * <h1>DeadlockPolicyBenchmark</h1>
+ * TM.processInstructions on the same generated workload under each
+ * deadlock policy.  Besides throughput, the commits and aborts of each
+ * replay are reported as extra counters so the abort rates of detection,
+ * wait-die and wound-wait can be compared.  checkEvery runs detection
+ * after each read and write, or in batched passes.
+ */
+
+package adb_project.bench;
+
+
+import adb_project.DeadlockPolicy;
+import adb_project.EngineListener;
+import adb_project.EngineMetrics;
+import adb_project.InstructionBuffer;
+import adb_project.NoOpEventSink;
+import adb_project.TM;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeadlockPolicyBenchmark {
+
+    @Param({"DETECT", "WAIT_DIE", "WOUND_WAIT"})
+    public DeadlockPolicy policy;
+
+    @Param({"medium", "high"})
+    public String contention;
+
+    @Param({"0", "32"})
+    public int checkEvery;
+
+    @Param({"1000"})
+    public int transactions;
+
+    private InstructionBuffer workload;
+
+
+    /**
+     * Commits and aborts summed over the replays of an iteration
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcomes {
+
+        public long commits;
+        public long aborts;
+
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            commits = 0;
+            aborts = 0;
+        }
+    }
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        workload = BenchmarkSupport.workload(transactions, contention, 0, 42);
+    }
+
+
+    @Benchmark
+    public void processInstructions(Outcomes outcomes) {
+        TM tm = new TM(workload.iterator());
+        tm.setEventListener(NoOpEventSink.INSTANCE);
+        tm.setDeadlockPolicy(policy);
+        tm.setDeadlockCheckEvery(checkEvery);
+        tm.processInstructions();
+
+        EngineMetrics metrics = tm.getMetrics();
+        outcomes.commits += metrics.getCommitCount(false);
+        for (EngineListener.AbortReason reason : EngineListener.AbortReason.values()) {
+            outcomes.aborts += metrics.getAbortCount(reason);
+        }
+    }
+}
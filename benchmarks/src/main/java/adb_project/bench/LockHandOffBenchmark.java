@@ -0,0 +1,92 @@
+/**
+ * <h1>LockHandOffBenchmark</h1>
+ * Cost of DM.end for a transaction holding a write lock that other
+ * transactions are queued on.  Releasing the lock hands it to the front
+ * of the queue, every queued reader or the first queued writer, and
+ * resumes them with the read or write they were waiting to run.
+ */
+
+package adb_project.bench;
+
+
+import adb_project.DM;
+import adb_project.Instruction;
+import adb_project.Transaction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LockHandOffBenchmark {
+
+    @Param({"replicated", "single"})
+    public String variable;
+
+    @Param({"read", "write"})
+    public String waiting;
+
+    @Param({"1", "10", "100"})
+    public int waiters;
+
+    private DM dm;
+    private Transaction holder;
+
+
+    @Setup(Level.Trial)
+    public void silence() {
+        BenchmarkSupport.silence();
+    }
+
+
+    @TearDown(Level.Trial)
+    public void restore() {
+        BenchmarkSupport.restore();
+    }
+
+
+    /**
+     * Has T1 write lock the variable and queues the waiters behind it, each
+     * younger than the one before so none of them is picked as a deadlock
+     */
+    @Setup(Level.Invocation)
+    public void queueWaiters() {
+        dm = new DM();
+        int varId = variable.equals("replicated") ? 2 : 3;
+        int opcode = waiting.equals("read") ? Instruction.READ : Instruction.WRITE;
+
+        Instruction I = new Instruction(Instruction.WRITE, 1, varId, 1);
+        holder = new Transaction(1, false, 1, I);
+        dm.write(holder, I);
+
+        for (int id = 2; id <= waiters + 1; id++) {
+            Instruction wait = new Instruction(opcode, id, varId, id);
+            Transaction T = new Transaction(id, false, id, wait);
+            if (opcode == Instruction.READ) {
+                dm.read(T, wait);
+            } else {
+                dm.write(T, wait);
+            }
+        }
+    }
+
+
+    @Benchmark
+    public void end() {
+        dm.end(holder);
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * <h1>ParserBenchmark</h1>
+ * Parsing a generated trace file with Parser.getInstructions and with
+ * the streaming and memory mapped readers it is built next to.  Next to
+ * ops/s, each reader reports megabytes parsed per second, which can be
+ * compared across trace sizes.
+ */
+
+package adb_project.bench;
+
+
+import adb_project.Instruction;
+import adb_project.InstructionBuffer;
+import adb_project.InstructionStream;
+import adb_project.MappedInstructionStream;
+import adb_project.Parser;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"100", "10000"})
+    public int transactions;
+
+    private Path trace;
+    private double traceMegabytes;
+    private Parser parser;
+
+
+    /**
+     * Megabytes of trace parsed, reported per second
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bandwidth {
+
+        public double megabytes;
+
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+        }
+    }
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        InstructionBuffer workload = BenchmarkSupport.workload(transactions, "low", 0, 42);
+        trace = Files.createTempFile("adb-trace", ".txt");
+
+        try (BufferedWriter out = Files.newBufferedWriter(trace, StandardCharsets.UTF_8)) {
+            for (Instruction I : workload) {
+                out.write(format(I));
+                out.newLine();
+            }
+        }
+        traceMegabytes = Files.size(trace) / (1024.0 * 1024.0);
+        parser = new Parser();
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(trace);
+    }
+
+
+    /**
+     * Writes an instruction back out in the input file format
+     * @param I - instruction object
+     * @return String - line of the trace
+     */
+    private static String format(Instruction I) {
+        switch (I.getOpcode()) {
+            case Instruction.READ:
+                return "R(T" + I.getId() + ",x" + I.getVariable() + ")";
+            case Instruction.WRITE:
+                return "W(T" + I.getId() + ",x" + I.getVariable() + "," + I.getValue() + ")";
+            case Instruction.FAIL:
+            case Instruction.RECOVER:
+                return I.getInstruction() + "(" + I.getId() + ")";
+            default:
+                return I.getInstruction() + "(T" + I.getId() + ")";
+        }
+    }
+
+
+    @Benchmark
+    public ArrayList<Instruction> getInstructions(Bandwidth bandwidth) throws IOException {
+        ArrayList<Instruction> instructions = parser.getInstructions(trace.toString());
+        bandwidth.megabytes += traceMegabytes;
+        return instructions;
+    }
+
+
+    @Benchmark
+    public int streamInstructions(Bandwidth bandwidth) throws IOException {
+        int count = 0;
+        try (InstructionStream instructions = parser.streamInstructions(trace.toString())) {
+            while (instructions.hasNext()) {
+                instructions.next();
+                count++;
+            }
+        }
+        bandwidth.megabytes += traceMegabytes;
+        return count;
+    }
+
+
+    @Benchmark
+    public int mapInstructions(Bandwidth bandwidth) throws IOException {
+        int count = 0;
+        try (MappedInstructionStream instructions = parser.mapInstructions(trace.toString())) {
+            while (instructions.hasNext()) {
+                instructions.next();
+                count++;
+            }
+        }
+        bandwidth.megabytes += traceMegabytes;
+        return count;
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * <h1>ProcessInstructionsBenchmark</h1>
+ * End to end throughput of TM.processInstructions over generated
+ * workloads.  One operation is a full replay of the workload against a
+ * fresh database.  The output parameter separates the engine's cost from
+ * its output - none drops every event, text formats them on the default
+ * background sink into a discarded System.out.
+ */
+
+package adb_project.bench;
+
+
+import adb_project.InstructionBuffer;
+import adb_project.NoOpEventSink;
+import adb_project.TM;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessInstructionsBenchmark {
+
+    @Param({"100", "1000"})
+    public int transactions;
+
+    @Param({"low", "high"})
+    public String contention;
+
+    @Param({"0", "3"})
+    public int failedSites;
+
+    @Param({"none", "text"})
+    public String output;
+
+    private InstructionBuffer workload;
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        workload = BenchmarkSupport.workload(transactions, contention, failedSites, 42);
+        BenchmarkSupport.silence();
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkSupport.restore();
+    }
+
+
+    @Benchmark
+    public void processInstructions() {
+        TM tm = new TM(workload.iterator());
+        if (output.equals("none")) {
+            tm.setEventListener(NoOpEventSink.INSTANCE);
+        }
+        tm.processInstructions();
+    }
+}
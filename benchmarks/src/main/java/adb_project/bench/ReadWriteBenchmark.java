@@ -0,0 +1,93 @@
+/**
+ * <h1>ReadWriteBenchmark</h1>
+ * DM.read and DM.write for a single transaction, each followed by
+ * DM.end so the locks are released and the next operation starts from
+ * the same state.  Replicated variables touch every live site while the
+ * other variables only touch their home site.
+ */
+
+package adb_project.bench;
+
+
+import adb_project.DM;
+import adb_project.Instruction;
+import adb_project.Transaction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadWriteBenchmark {
+
+    @Param({"replicated", "single"})
+    public String variable;
+
+    @Param({"0", "3"})
+    public int failedSites;
+
+    private DM dm;
+    private int varId;
+    private int nextId;
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkSupport.silence();
+        dm = new DM();
+
+        // The odd variable x3 lives on site 4 so it stays up
+        for (int site = 1; site <= failedSites; site++) {
+            dm.fail(new Instruction(Instruction.FAIL, site, 0, 0));
+        }
+        varId = variable.equals("replicated") ? 2 : 3;
+        nextId = 1;
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkSupport.restore();
+    }
+
+
+    @Benchmark
+    public void write() {
+        Instruction I = new Instruction(Instruction.WRITE, nextId, varId, nextId);
+        Transaction T = new Transaction(nextId++, false, 0, I);
+        dm.write(T, I);
+        dm.end(T);
+    }
+
+
+    @Benchmark
+    public void read() {
+        Instruction I = new Instruction(Instruction.READ, nextId, varId, 0);
+        Transaction T = new Transaction(nextId++, false, 0, I);
+        dm.read(T, I);
+        dm.end(T);
+    }
+
+
+    @Benchmark
+    public void readOnly() {
+        Instruction I = new Instruction(Instruction.READ, nextId, varId, 0);
+        Transaction T = new Transaction(nextId++, true, 1, I);
+        dm.read(T, I);
+        dm.end(T);
+    }
+}
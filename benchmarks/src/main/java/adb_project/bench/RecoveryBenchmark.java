@@ -0,0 +1,92 @@
+/**
+ * <h1>RecoveryBenchmark</h1>
+ * A durable site coming back from disk - Site.openLog loading the newest
+ * checkpoint and replaying the log after it.  The history is the number
+ * of commits made before the restart, spread over a fixed set of
+ * variables.  Without checkpoints recovery replays the whole history;
+ * with them it stays flat as the history grows.
+ */
+
+package adb_project.bench;
+
+
+import adb_project.Checkpointer;
+import adb_project.Instruction;
+import adb_project.Site;
+import adb_project.Topology;
+import adb_project.Transaction;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecoveryBenchmark {
+
+    private static final int VARIABLES = 10000;
+    private static final Topology TOPOLOGY = new Topology(1, VARIABLES, 2);
+
+    @Param({"100000", "1000000", "4000000"})
+    public int history;
+
+    @Param({"0", "50000"})
+    public int checkpointEvery;
+
+    private Path directory;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("site-recovery");
+        Checkpointer checkpointer = new Checkpointer(directory);
+        Site site = new Site(1, TOPOLOGY);
+        site.openLog(directory, checkpointEvery, checkpointer);
+
+        Instruction write = new Instruction(Instruction.WRITE, 1, 1, 0);
+        Transaction transaction = new Transaction(1, false, 0, write);
+        for (int time = 2; time < history + 2; time++) {
+            int variable = 1 + (int) ((time * 7919L) % VARIABLES);
+            site.lockVariable(transaction, variable, new Instruction(Instruction.WRITE, 1, variable, time));
+            site.handleLockTable(transaction, variable, time, time);
+        }
+
+        checkpointer.shutdown();
+        site.closeLog();
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkSupport.deleteDirectory(directory);
+    }
+
+
+    @Benchmark
+    public Site recover() throws IOException {
+        Site site = new Site(1, TOPOLOGY);
+        site.openLog(directory, 0, null);
+        site.closeLog();
+        return site;
+    }
+}
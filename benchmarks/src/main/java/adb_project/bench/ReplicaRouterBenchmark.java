@@ -0,0 +1,67 @@
+/**
+ * <h1>ReplicaRouterBenchmark</h1>
+ * ReplicaRouter.route picking the replica for a read-only read of a
+ * replicated variable, under each policy with all sites up and with all
+ * but one down.
+ */
+
+package adb_project.bench;
+
+
+import adb_project.ReplicaRouter;
+import adb_project.Site;
+
+import java.util.ArrayList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplicaRouterBenchmark {
+
+    private static final int SITES = 10;
+    private static final int VARIABLE = 2;
+
+    @Param({"ROUND_ROBIN", "LEAST_LOADED", "POWER_OF_TWO"})
+    public ReplicaRouter.Policy policy;
+
+    @Param({"0", "9"})
+    public int failedSites;
+
+    private ReplicaRouter router;
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ArrayList<Site> sites = new ArrayList<>();
+        for (int i = 1; i <= SITES; i++) {
+            sites.add(new Site(i));
+        }
+        router = new ReplicaRouter(sites, policy);
+
+        for (int i = 0; i < failedSites; i++) {
+            sites.get(i).setSiteState("failed");
+            router.siteChanged(sites.get(i));
+        }
+    }
+
+
+    @Benchmark
+    public Site route() {
+        return router.route(VARIABLE);
+    }
+}
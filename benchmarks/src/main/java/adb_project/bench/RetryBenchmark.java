@@ -0,0 +1,114 @@
+/**
+ * <h1>RetryBenchmark</h1>
+ * TM.processInstructions on a generated workload with aborted
+ * transactions dropped or restarted by the retry scheduler.  Goodput,
+ * the reads and writes of committed transactions, is reported per
+ * second next to throughput, along with commits, aborts and retries,
+ * so the work saved by retrying can be weighed against what it costs.
+ */
+
+package adb_project.bench;
+
+
+import adb_project.EngineListener;
+import adb_project.EngineMetrics;
+import adb_project.InstructionBuffer;
+import adb_project.NoOpEventSink;
+import adb_project.TM;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RetryBenchmark {
+
+    @Param({"0", "3"})
+    public int retries;
+
+    @Param({"8"})
+    public int backoff;
+
+    @Param({"medium", "high"})
+    public String contention;
+
+    @Param({"1000"})
+    public int transactions;
+
+    private InstructionBuffer workload;
+
+
+    /**
+     * Reads and writes of committed transactions, reported per second
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Goodput {
+
+        public long committedOperations;
+
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            committedOperations = 0;
+        }
+    }
+
+
+    /**
+     * Commits, aborts and retries summed over the replays of an iteration
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcomes {
+
+        public long commits;
+        public long aborts;
+        public long restarts;
+
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            commits = 0;
+            aborts = 0;
+            restarts = 0;
+        }
+    }
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        workload = BenchmarkSupport.workload(transactions, contention, 0, 42);
+    }
+
+
+    @Benchmark
+    public void processInstructions(Goodput goodput, Outcomes outcomes) {
+        TM tm = new TM(workload.iterator());
+        tm.setEventListener(NoOpEventSink.INSTANCE);
+        tm.setRetries(retries, backoff);
+        tm.processInstructions();
+
+        EngineMetrics metrics = tm.getMetrics();
+        goodput.committedOperations += metrics.getCommittedOperationCount();
+        outcomes.commits += metrics.getCommitCount(false);
+        outcomes.restarts += metrics.getRetryCount();
+        for (EngineListener.AbortReason reason : EngineListener.AbortReason.values()) {
+            outcomes.aborts += metrics.getAbortCount(reason);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * <h1>ScalingBenchmark</h1>
+ * Per-operation latency of TM.processInstructions as the number of
+ * sites and variables grows.  Each invocation replays the same shape of
+ * workload - short transactions reading and writing uniformly random
+ * variables - against a fresh database with the given topology, and is
+ * counted as one operation per instruction, so the score is ns per
+ * instruction.  siteThreads 0 runs sites serially.
+ */
+
+package adb_project.bench;
+
+
+import adb_project.Instruction;
+import adb_project.InstructionBuffer;
+import adb_project.NoOpEventSink;
+import adb_project.TM;
+import adb_project.Topology;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScalingBenchmark {
+
+    private static final int TRANSACTIONS = 1000;
+    private static final int OPS_PER_TRANSACTION = 4;
+    // A begin and an end around each transaction's reads and writes
+    private static final int INSTRUCTIONS = TRANSACTIONS * (OPS_PER_TRANSACTION + 2);
+
+    @Param({"10", "100", "1000"})
+    public int sites;
+
+    @Param({"20", "10000", "1000000"})
+    public int variables;
+
+    @Param({"0"})
+    public int siteThreads;
+
+    private Topology topology;
+    private InstructionBuffer workload;
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        topology = new Topology(sites, variables, 2);
+        workload = generate(TRANSACTIONS, OPS_PER_TRANSACTION, variables, 42);
+    }
+
+
+    /**
+     * Builds a workload of transactions that run one after another, each
+     * reading or writing random variables
+     * @param transactions - number of transactions
+     * @param opsPerTransaction - reads and writes per transaction
+     * @param variableCount - number of variables to choose from
+     * @param seed - random seed
+     * @return InstructionBuffer - the workload
+     */
+    private static InstructionBuffer generate(int transactions, int opsPerTransaction, int variableCount,
+                                              long seed) {
+        Random random = new Random(seed);
+        InstructionBuffer buffer = new InstructionBuffer(transactions * (opsPerTransaction + 2));
+
+        for (int t = 1; t <= transactions; t++) {
+            buffer.add(Instruction.BEGIN, t, 0, 0);
+            for (int op = 0; op < opsPerTransaction; op++) {
+                int variable = 1 + random.nextInt(variableCount);
+                if (random.nextBoolean()) {
+                    buffer.add(Instruction.READ, t, variable, 0);
+                } else {
+                    buffer.add(Instruction.WRITE, t, variable, random.nextInt(1000));
+                }
+            }
+            buffer.add(Instruction.END, t, 0, 0);
+        }
+        return buffer;
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public void processInstructions() {
+        TM tm = new TM(workload.iterator(), topology, siteThreads);
+        tm.setEventListener(NoOpEventSink.INSTANCE);
+        tm.processInstructions();
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * <h1>SiteBenchmark</h1>
+ * Site.handleLockTable committing a write lock.  The low-water mark
+ * trails the commit time by the version-history depth, so every commit
+ * appends a version and prunes the oldest one out of a history of that
+ * depth.
+ */
+
+package adb_project.bench;
+
+
+import adb_project.Instruction;
+import adb_project.Site;
+import adb_project.Transaction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SiteBenchmark {
+
+    private static final int VARIABLE = 2;
+
+    @Param({"1", "64", "1024"})
+    public int versionDepth;
+
+    private Site site;
+    private Transaction transaction;
+    private Instruction write;
+    private int time;
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        site = new Site(1);
+        write = new Instruction(Instruction.WRITE, 1, VARIABLE, 7);
+        transaction = new Transaction(1, false, 0, write);
+        time = 1;
+
+        // Fill the history up to its depth before measuring
+        for (int i = 0; i < versionDepth; i++) {
+            handleLockTable();
+        }
+    }
+
+
+    @Benchmark
+    public Integer handleLockTable() {
+        site.lockVariable(transaction, VARIABLE, write);
+        time++;
+        return site.handleLockTable(transaction, VARIABLE, time, time - versionDepth);
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * <h1>SiteLogBenchmark</h1>
+ * Site.handleLockTable committing a write lock on a durable site, with the
+ * log synced once every syncEvery commits the way GroupCommit batches
+ * them.  The batch size shows what group commit buys under a sustained
+ * write load - a batch of 1 forces the log on every commit.
+ */
+
+package adb_project.bench;
+
+
+import adb_project.Instruction;
+import adb_project.Site;
+import adb_project.Transaction;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SiteLogBenchmark {
+
+    private static final int VARIABLE = 2;
+
+    @Param({"1", "64", "1024"})
+    public int syncEvery;
+
+    private Path directory;
+    private Site site;
+    private Transaction transaction;
+    private Instruction write;
+    private int time;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("site-log");
+        site = new Site(1);
+        site.openLog(directory, 0, null);
+        write = new Instruction(Instruction.WRITE, 1, VARIABLE, 7);
+        transaction = new Transaction(1, false, 0, write);
+        time = 1;
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        site.closeLog();
+        BenchmarkSupport.deleteDirectory(directory);
+    }
+
+
+    @Benchmark
+    public Integer commit() {
+        site.lockVariable(transaction, VARIABLE, write);
+        time++;
+        Integer value = site.handleLockTable(transaction, VARIABLE, time, time);
+        if (time % syncEvery == 0) {
+            site.syncLog();
+        }
+        return value;
+    }
+}
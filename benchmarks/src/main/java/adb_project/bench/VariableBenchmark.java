@@ -0,0 +1,66 @@
+/**
+ * <h1>VariableBenchmark</h1>
+ * Variable.getPreviousValue lookups for read-only snapshots over a
+ * version history of a given depth.  Snapshot times are spread over the
+ * whole history.
+ */
+
+package adb_project.bench;
+
+
+import adb_project.Variable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VariableBenchmark {
+
+    private static final int LOOKUPS = 1024;
+
+    @Param({"1", "16", "256", "4096"})
+    public int versionDepth;
+
+    private Variable variable;
+    private int[] snapshotTimes;
+    private int next;
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        variable = new Variable(2);
+        for (int i = 1; i <= versionDepth; i++) {
+            variable.updateValue(i, 2 * i);
+        }
+
+        Random random = new Random(42);
+        snapshotTimes = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            snapshotTimes[i] = 1 + random.nextInt(2 * versionDepth + 1);
+        }
+        next = 0;
+    }
+
+
+    @Benchmark
+    public int getPreviousValue() {
+        next = (next + 1) & (LOOKUPS - 1);
+        return variable.getPreviousValue(snapshotTimes[next]);
+    }
+}
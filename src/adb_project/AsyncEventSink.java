@@ -0,0 +1,294 @@
+/**
+ * <h1>AsyncEventSink</h1>
+ * Listener that hands events to another listener on a background
+ * thread, so formatting and writing the output is taken off the thread
+ * processing instructions.  Events are packed into batches of plain
+ * ints; a full batch is queued for the writer thread and an emptied
+ * one comes back to be reused, so recording an event never allocates.
+ * <p>
+ * Only a few batches can be queued.  If the writer falls behind, the
+ * engine waits for it instead of holding an unbounded backlog.  The
+ * writer thread is only started once a batch fills up, so a short run
+ * is handed over in one go on flush without starting a thread.
+ * <p>
+ * Events must come from one thread at a time.
+ */
+
+package adb_project;
+
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+
+public class AsyncEventSink implements EngineListener, Closeable {
+
+    private static final int READ = 0;
+    private static final int COMMITTED = 1;
+    private static final int ABORTED = 2;
+    private static final int DUMPED = 3;
+    private static final int RESTARTED = 4;
+
+    // type and up to four operands
+    private static final int EVENT_SIZE = 5;
+    private static final int BATCH_EVENTS = 4096;
+    private static final int QUEUED_BATCHES = 4;
+
+    private static final EngineListener.AbortReason[] REASONS = EngineListener.AbortReason.values();
+
+    private EngineListener delegate;
+    private Batch current;
+    private ArrayBlockingQueue<Batch> full;
+    private ArrayBlockingQueue<Batch> free;
+    private Thread writer;
+    private volatile RuntimeException error;
+
+
+    /**
+     * Events waiting to be handed to the delegate, or a flush / stop request
+     * when latch is set
+     */
+    private static final class Batch {
+
+        private int[] events;
+        private Dump[] dumps;
+        private int size;
+        private CountDownLatch latch;
+        private boolean stop;
+
+
+        private Batch(int capacity) {
+            this.events = new int[capacity * EVENT_SIZE];
+            this.dumps = new Dump[capacity];
+        }
+
+
+        private boolean isFull() {
+            return size == dumps.length;
+        }
+    }
+
+
+    /**
+     * Creates a sink in front of another listener
+     * @param delegate - listener the events are handed to on the writer thread
+     *
+     * <ul>
+     *      <li>current - batch events are being added to</li>
+     *      <li>full / free - batches queued for the writer and batches to reuse</li>
+     *      <li>error - what the delegate threw, rethrown on the next flush</li>
+     * </ul>
+     */
+    public AsyncEventSink(EngineListener delegate) {
+        this.delegate = delegate;
+        this.current = new Batch(BATCH_EVENTS);
+        this.full = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+        this.free = new ArrayBlockingQueue<>(QUEUED_BATCHES + 1);
+    }
+
+
+    public void read(int transaction, int varId, int value) {
+        add(READ, transaction, varId, value, 0);
+    }
+
+
+    public void committed(int transaction, int varId, int value, int siteId) {
+        add(COMMITTED, transaction, varId, value, siteId);
+    }
+
+
+    public void aborted(int transaction, AbortReason reason, int cause) {
+        add(ABORTED, transaction, reason.ordinal(), cause, 0);
+    }
+
+
+    public void restarted(int transaction, int retry) {
+        add(RESTARTED, transaction, retry, 0, 0);
+    }
+
+
+    public void dumped(Dump dump) {
+        current.dumps[current.size] = dump;
+        add(DUMPED, 0, 0, 0, 0);
+    }
+
+
+    /**
+     * Adds an event to the current batch and queues the batch once it is full
+     * @param type - event type
+     * @param a - first operand
+     * @param b - second operand
+     * @param c - third operand
+     * @param d - fourth operand
+     */
+    private void add(int type, int a, int b, int c, int d) {
+        Batch batch = current;
+        int i = batch.size * EVENT_SIZE;
+        batch.events[i] = type;
+        batch.events[i + 1] = a;
+        batch.events[i + 2] = b;
+        batch.events[i + 3] = c;
+        batch.events[i + 4] = d;
+        batch.size++;
+
+        if (batch.isFull()) {
+            startWriter();
+            put(batch);
+            Batch reused = free.poll();
+            current = (reused != null) ? reused : new Batch(BATCH_EVENTS);
+        }
+    }
+
+
+    /**
+     * Waits until every event so far has been handed to the delegate and the
+     * delegate has been flushed.  Rethrows anything the delegate threw
+     */
+    public void flush() {
+        if (writer == null) {
+            // Never filled a batch - hand it over right here
+            replay(current);
+            delegate.flush();
+        } else {
+            if (current.size > 0) {
+                put(current);
+                Batch reused = free.poll();
+                current = (reused != null) ? reused : new Batch(BATCH_EVENTS);
+            }
+            request(false);
+        }
+
+        RuntimeException failure = error;
+        if (failure != null) {
+            error = null;
+            throw failure;
+        }
+    }
+
+
+    /**
+     * Flushes and stops the writer thread
+     */
+    public void close() {
+        try {
+            flush();
+        } finally {
+            if (writer != null) {
+                request(true);
+                writer = null;
+            }
+        }
+    }
+
+
+    /**
+     * Starts the writer thread if it isn't running yet
+     */
+    private void startWriter() {
+        if (writer != null) {
+            return;
+        }
+        writer = new Thread(this::drain, "event-sink");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+
+    /**
+     * Queues a flush or stop request and waits for the writer to get to it
+     * @param stop - whether the writer stops after it
+     */
+    private void request(boolean stop) {
+        Batch request = new Batch(0);
+        request.latch = new CountDownLatch(1);
+        request.stop = stop;
+        put(request);
+        try {
+            request.latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Queues a batch for the writer, waiting if it is behind
+     * @param batch - batch to queue
+     */
+    private void put(Batch batch) {
+        try {
+            full.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Writer thread - hands each queued batch to the delegate and sends it back
+     * to be reused
+     */
+    private void drain() {
+        while (true) {
+            Batch batch;
+            try {
+                batch = full.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            if (batch.latch != null) {
+                try {
+                    delegate.flush();
+                } catch (RuntimeException e) {
+                    error = (error == null) ? e : error;
+                }
+                batch.latch.countDown();
+                if (batch.stop) {
+                    return;
+                }
+                continue;
+            }
+
+            try {
+                replay(batch);
+            } catch (RuntimeException e) {
+                error = (error == null) ? e : error;
+            }
+            batch.size = 0;
+            free.offer(batch);
+        }
+    }
+
+
+    /**
+     * Hands the events of a batch to the delegate in order and empties it
+     * @param batch - batch to replay
+     */
+    private void replay(Batch batch) {
+        int[] events = batch.events;
+        for (int n = 0; n < batch.size; n++) {
+            int i = n * EVENT_SIZE;
+            switch (events[i]) {
+                case READ:
+                    delegate.read(events[i + 1], events[i + 2], events[i + 3]);
+                    break;
+                case COMMITTED:
+                    delegate.committed(events[i + 1], events[i + 2], events[i + 3], events[i + 4]);
+                    break;
+                case ABORTED:
+                    delegate.aborted(events[i + 1], REASONS[events[i + 2]], events[i + 3]);
+                    break;
+                case RESTARTED:
+                    delegate.restarted(events[i + 1], events[i + 2]);
+                    break;
+                default:
+                    delegate.dumped(batch.dumps[n]);
+                    batch.dumps[n] = null;
+                    break;
+            }
+        }
+        batch.size = 0;
+    }
+}
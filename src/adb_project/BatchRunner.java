@@ -0,0 +1,329 @@
+/**
+ * <h1>BatchRunner</h1>
+ * Replays many trace files at once.  Each trace gets its own Task
+ * Manager and Data Manager on a thread of a fixed pool, and its output
+ * goes to its own file (or nowhere), so traces don't interfere with each
+ * other.  Prints a timing table with a row per trace once all are done.
+ * <p>
+ * Usage: BatchRunner glob [threads] [outputDir]
+ * <p>
+ * e.g. BatchRunner "tests/input_*.txt" 4 out writes out/input_1.txt.out and so on.
+ * threads defaults to the number of cores.  Without an outputDir the
+ * engine output is dropped and only the timings are printed.
+ */
+
+package adb_project;
+
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+
+public class BatchRunner {
+
+    private int threads;
+    private Path outputDir;
+
+
+    /**
+     * Creates a batch runner
+     * @param threads - number of traces replayed at the same time
+     * @param outputDir - directory for the output of each trace or null to drop it
+     */
+    public BatchRunner(int threads, Path outputDir) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread");
+        }
+        this.threads = threads;
+        this.outputDir = outputDir;
+    }
+
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.out.println("Usage: BatchRunner glob [threads] [outputDir]");
+            return;
+        }
+
+        int threads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        Path outputDir = (args.length > 2) ? Paths.get(args[2]) : null;
+
+        List<Path> traces = findTraces(args[0]);
+        if (traces.isEmpty()) {
+            System.out.println("No traces match " + args[0]);
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<Result> results = new BatchRunner(threads, outputDir).run(traces);
+        long wall = System.nanoTime() - start;
+
+        printTable(results, wall, threads);
+    }
+
+
+    /**
+     * Finds the files matching a glob.  The search starts from the directory
+     * part of the pattern before its first wildcard
+     * @param glob - glob pattern, e.g. tests/input_*.txt or traces/**.txt
+     * @return List - matching files in name order
+     */
+    public static List<Path> findTraces(String glob) throws IOException {
+        int wildcard = indexOfWildcard(glob);
+        int slash = glob.lastIndexOf('/', wildcard);
+        Path base = Paths.get((slash < 0) ? "." : glob.substring(0, slash + 1));
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        boolean relativeToDot = slash < 0;
+
+        try (Stream<Path> paths = Files.walk(base)) {
+            return paths.filter(Files::isRegularFile)
+                    .map(path -> relativeToDot ? base.relativize(path) : path)
+                    .filter(matcher::matches)
+                    .sorted(BatchRunner::compareNames)
+                    .collect(Collectors.toList());
+        }
+    }
+
+
+    /**
+     * Position of the first glob wildcard in a pattern
+     * @param glob - glob pattern
+     * @return int - index or the pattern length if there is none
+     */
+    private static int indexOfWildcard(String glob) {
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return i;
+            }
+        }
+        return glob.length();
+    }
+
+
+    /**
+     * Orders paths by name with runs of digits compared by value, so
+     * input_2 comes before input_10
+     * @param a - path
+     * @param b - path
+     * @return int - comparison result
+     */
+    private static int compareNames(Path a, Path b) {
+        String x = a.toString();
+        String y = b.toString();
+        int i = 0;
+        int j = 0;
+
+        while (i < x.length() && j < y.length()) {
+            if (Character.isDigit(x.charAt(i)) && Character.isDigit(y.charAt(j))) {
+                int iEnd = i;
+                int jEnd = j;
+                while (iEnd < x.length() && Character.isDigit(x.charAt(iEnd))) iEnd++;
+                while (jEnd < y.length() && Character.isDigit(y.charAt(jEnd))) jEnd++;
+                int compare = Long.compare(Long.parseLong(x.substring(i, iEnd)), Long.parseLong(y.substring(j, jEnd)));
+                if (compare != 0) {
+                    return compare;
+                }
+                i = iEnd;
+                j = jEnd;
+            } else {
+                if (x.charAt(i) != y.charAt(j)) {
+                    return Character.compare(x.charAt(i), y.charAt(j));
+                }
+                i++;
+                j++;
+            }
+        }
+        return Integer.compare(x.length() - i, y.length() - j);
+    }
+
+
+    /**
+     * Replays every trace on the thread pool and waits for all of them
+     * @param traces - trace files
+     * @return List - a result per trace in the same order as the traces
+     */
+    public List<Result> run(List<Path> traces) throws IOException, InterruptedException {
+        if (outputDir != null) {
+            Files.createDirectories(outputDir);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Result>> pending = new ArrayList<>();
+            for (Path trace : traces) {
+                pending.add(pool.submit(() -> replay(trace)));
+            }
+
+            List<Result> results = new ArrayList<>();
+            for (int i = 0; i < pending.size(); i++) {
+                try {
+                    results.add(pending.get(i).get());
+                } catch (ExecutionException e) {
+                    results.add(new Result(traces.get(i), 0, 0, e.getCause().toString()));
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+
+    /**
+     * Replays a single trace with its own engine
+     * @param trace - trace file
+     * @return Result - timing of the trace
+     */
+    private Result replay(Path trace) {
+        Parser parser = new Parser();
+        PrintStream out = null;
+
+        try (MappedInstructionStream instructions = parser.mapInstructions(trace.toString())) {
+            if (outputDir != null) {
+                Path file = outputDir.resolve(trace.getFileName() + ".out");
+                out = new PrintStream(new BufferedOutputStream(Files.newOutputStream(file)), false, "UTF-8");
+            }
+
+            CountingIterator counted = new CountingIterator(instructions);
+            TM tm = new TM(counted);
+            if (out != null) {
+                tm.setOutput(out);
+            } else {
+                tm.setEventListener(NoOpEventSink.INSTANCE);
+            }
+
+            long start = System.nanoTime();
+            tm.processInstructions();
+            long elapsed = System.nanoTime() - start;
+
+            return new Result(trace, counted.count, elapsed, "ok");
+        } catch (IOException | RuntimeException e) {
+            return new Result(trace, 0, 0, e.toString());
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+
+
+    /**
+     * Prints the timing table
+     * @param results - result per trace
+     * @param wall - wall clock time of the whole batch in nanoseconds
+     * @param threads - size of the thread pool
+     */
+    private static void printTable(List<Result> results, long wall, int threads) {
+        int width = "trace".length();
+        for (Result result : results) {
+            width = Math.max(width, result.trace.toString().length());
+        }
+
+        String row = "%-" + width + "s %12s %12s %14s  %s%n";
+        System.out.printf(row, "trace", "instructions", "ms", "instructions/s", "result");
+
+        long busy = 0;
+        long instructions = 0;
+        for (Result result : results) {
+            busy += result.nanos;
+            instructions += result.instructions;
+            System.out.printf(row, result.trace, result.instructions,
+                    String.format("%.3f", result.nanos / 1e6),
+                    (result.nanos == 0) ? "-" : String.format("%.0f", result.instructions * 1e9 / result.nanos),
+                    result.status);
+        }
+
+        System.out.println();
+        System.out.printf("%d traces, %d instructions on %d threads%n", results.size(), instructions, threads);
+        System.out.printf("wall %.1f ms, sum of trace times %.1f ms%n", wall / 1e6, busy / 1e6);
+    }
+
+
+    /**
+     * Outcome of replaying one trace
+     */
+    public static class Result {
+
+        private Path trace;
+        private long instructions;
+        private long nanos;
+        private String status;
+
+
+        /**
+         * Creates a result
+         * @param trace - trace file
+         * @param instructions - number of instructions replayed
+         * @param nanos - replay time in nanoseconds
+         * @param status - ok or the error the replay stopped with
+         */
+        public Result(Path trace, long instructions, long nanos, String status) {
+            this.trace = trace;
+            this.instructions = instructions;
+            this.nanos = nanos;
+            this.status = status;
+        }
+
+
+        public Path getTrace() {
+            return trace;
+        }
+
+
+        public long getInstructions() {
+            return instructions;
+        }
+
+
+        public long getNanos() {
+            return nanos;
+        }
+
+
+        public String getStatus() {
+            return status;
+        }
+    }
+
+
+    /**
+     * Counts the instructions handed to the Task Manager
+     */
+    private static class CountingIterator implements Iterator<Instruction> {
+
+        private Iterator<Instruction> instructions;
+        private long count;
+
+
+        CountingIterator(Iterator<Instruction> instructions) {
+            this.instructions = instructions;
+        }
+
+
+        public boolean hasNext() {
+            return instructions.hasNext();
+        }
+
+
+        public Instruction next() {
+            count++;
+            return instructions.next();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * <h1>CatchUpCopier</h1>
+ * Brings recovered sites back to full read capacity.  A recovered site
+ * can't serve reads of its replicated variables until they are written
+ * again, so the copier copies the latest committed value and version
+ * chain of each one from a site that can be read and makes it readable
+ * as soon as the copy lands.  Once every variable of a site can be read
+ * the site is caught up and can go back to running.
+ * <p>
+ * Copies are made in batches between instructions.  At most batchSize
+ * variables are looked at per instruction, so a recovered site catches
+ * up within a bounded number of instructions and the instructions
+ * around it are never held up for long.
+ * <p>
+ * A variable that is being written is left until the writer is done.
+ * The writer's commit only lands on the sites it locked, so a copy taken
+ * before the commit would stay behind it for good.
+ */
+
+package adb_project;
+
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+
+public class CatchUpCopier {
+
+    private List<Site> sites;
+    private int batchSize;
+    private IntPredicate writing;
+    private ArrayDeque<Site> recovering;
+    private int[] cursor;
+    private long copied;
+
+
+    /**
+     * Receives each variable once its copy has landed, and each site once
+     * all of its variables can be read
+     */
+    public interface Listener {
+
+        /**
+         * Handles a variable that just became readable
+         * @param site - site that caught up on the variable
+         * @param varId - variable ID
+         */
+        void copied(Site site, int varId);
+
+
+        /**
+         * Handles a site that can read every one of its variables again
+         * @param site - site that caught up
+         */
+        void caughtUp(Site site);
+    }
+
+
+    /**
+     * Creates a copier
+     * @param sites - all sites, site i at index i - 1
+     * @param batchSize - most variables looked at per instruction
+     * @param writing - whether a variable is write locked or has writers queued for it
+     *
+     * <ul>
+     *      <li>recovering - sites still catching up, in the order they recovered</li>
+     *      <li>cursor - next variable ID to look at for each site</li>
+     * </ul>
+     */
+    public CatchUpCopier(List<Site> sites, int batchSize, IntPredicate writing) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        }
+
+        this.sites = sites;
+        this.batchSize = batchSize;
+        this.writing = writing;
+        this.recovering = new ArrayDeque<>();
+        this.cursor = new int[sites.size() + 1];
+    }
+
+
+    /**
+     * Starts catching up a site that just recovered
+     * @param site - recovered site
+     */
+    public void recovered(Site site) {
+        cursor[site.getId()] = 0;
+        if (!recovering.contains(site)) {
+            recovering.add(site);
+        }
+    }
+
+
+    /**
+     * Stops catching up a site that failed again
+     * @param site - failed site
+     */
+    public void failed(Site site) {
+        recovering.remove(site);
+    }
+
+
+    /**
+     * Checks whether any site is still catching up
+     * @return Boolean - true/false whether there is nothing to copy
+     */
+    public boolean isIdle() {
+        return recovering.isEmpty();
+    }
+
+
+    /**
+     * Gets the number of variables copied so far
+     * @return long - copies made
+     */
+    public long getCopiedCount() {
+        return copied;
+    }
+
+
+    /**
+     * Copies the next batch of variables.  Sites are caught up one at a time
+     * in the order they recovered.  A variable no other site can be read from
+     * right now, or that is being written, is skipped and tried again on the
+     * next pass over the site
+     * @param listener - told about each variable as its copy lands and each
+     *                   site once it has caught up
+     */
+    public void step(Listener listener) {
+        int budget = batchSize;
+        int passes = recovering.size();
+
+        while (budget > 0 && passes > 0 && !recovering.isEmpty()) {
+            Site site = recovering.peek();
+            int id = site.getId();
+            int varId = site.nextUnreadable(cursor[id] + 1);
+
+            if (varId < 0) {
+                recovering.poll();
+                if (site.nextUnreadable(1) >= 0) {
+                    // Some had nothing to copy from or were being written - go around again later
+                    cursor[id] = 0;
+                    recovering.add(site);
+                } else {
+                    listener.caughtUp(site);
+                }
+                passes--;
+                continue;
+            }
+
+            cursor[id] = varId;
+            budget--;
+            Site source = writing.test(varId) ? null : findSource(site, varId);
+            if (source != null) {
+                site.copyVariable(source, varId);
+                copied++;
+                listener.copied(site, varId);
+            }
+        }
+    }
+
+
+    /**
+     * Finds a site a variable can be copied from
+     * @param target - site catching up
+     * @param varId - variable ID
+     * @return Site - a live site holding a readable copy, or null if there is none
+     */
+    private Site findSource(Site target, int varId) {
+        for (Site site : sites) {
+            if (site != target && site.hasVariable(varId) && !site.getSiteState().equals("failed")
+                    && site.isOkToRead(varId)) {
+                return site;
+            }
+        }
+        return null;
+    }
+}
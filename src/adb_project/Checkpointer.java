@@ -0,0 +1,72 @@
+/**
+ * <h1>Checkpointer</h1>
+ * Background thread that writes site checkpoints.  A site hands over the
+ * copies of its changed variables and goes straight back to processing;
+ * the checkpoint is written here and once it is on disk the log segments
+ * and older checkpoints it covers are deleted.
+ */
+
+package adb_project;
+
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+
+public class Checkpointer {
+
+    private Path directory;
+    private ExecutorService executor;
+
+
+    /**
+     * Starts the checkpoint thread
+     * @param directory - directory holding the site logs
+     */
+    public Checkpointer(Path directory) {
+        this.directory = directory;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * Writes a checkpoint in the background and tells the site when it is done
+     * @param site - site the checkpoint is for
+     * @param snapshot - checkpoint to write
+     */
+    public void submit(Site site, SiteSnapshot snapshot) {
+        int siteId = site.getId();
+        executor.execute(() -> {
+            try {
+                snapshot.write(directory, siteId);
+                SiteLog.deleteSegmentsBefore(directory, siteId, snapshot.getSegment());
+                SiteSnapshot.deleteBefore(directory, siteId, snapshot.getSegment());
+                site.checkpointFinished(snapshot.getSegment(), null);
+            } catch (IOException e) {
+                site.checkpointFinished(snapshot.getSegment(), e);
+            }
+        });
+    }
+
+
+    /**
+     * Waits for the checkpoints already handed over and stops the thread
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // Keep waiting, a checkpoint that is cut off is just not used
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
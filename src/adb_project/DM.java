@@ -12,33 +12,330 @@
 package adb_project;
 
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.Random;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
-import java.util.Stack;
+import java.util.function.Function;
 
 
 public class DM {
 
-    private final int MAX_SITES = 10;
+    private TM tm;
+    private EngineListener events;
+    private Topology topology;
     private int failedSiteCount;
     private ArrayList<Site> sites;
-    private Set<Transaction> transactionSet = new HashSet<>();
-    private HashMap<Transaction, Boolean> visitedCycleCheck = new HashMap<>();
-    private HashMap<Transaction, Boolean> doneCycleCheck = new HashMap<>();
+    private WaitsForGraph waitsFor;
+    private SiteWorkers workers;
+    private Checkpointer checkpointer;
+    private GroupCommit groupCommit;
+    private CatchUpCopier catchUp;
+    private CatchUpCopier.Listener catchUpListener;
+    private ReplicaRouter router;
+    private EngineMetrics metrics;
+    private DeadlockPolicy deadlockPolicy;
 
 
     /**
-     * Creates a Data Manager Object.  Keeps tracks of all sites
-     * and a count of how many sites have failed
+     * Creates a Data Manager Object with the default topology
      */
     public DM() {
+        this(Topology.DEFAULT);
+    }
+
+
+    /**
+     * Creates a Data Manager Object with a Task Manager of its own that only
+     * holds the lock and wait queues.  Used to drive the Data Manager directly
+     * @param topology - number of sites and variables and where variables live
+     */
+    public DM(Topology topology) {
+        this(new TM(Collections.<Instruction>emptyIterator(), topology), topology, 0);
+    }
+
+
+    /**
+     * Creates a Data Manager Object.  Keeps tracks of all sites,
+     * a count of how many sites have failed and the waits-for graph.
+     * Queues and time come from the Task Manager that owns it, so
+     * separate TM/DM pairs don't share any state.
+     * With site threads, locks and commits on replicated variables are sent
+     * to every replica at once and the results are joined in site order, so
+     * the output is the same as running serially
+     * @param tm - Task Manager that owns this Data Manager
+     * @param topology - number of sites and variables and where variables live
+     * @param siteThreads - number of site worker threads, 0 to run on the caller's thread
+     */
+    public DM(TM tm, Topology topology, int siteThreads) {
+        this.tm = tm;
+        this.events = tm.getEventListener();
+        this.topology = topology;
         failedSiteCount = 0;
         sites = initializeSites();
+        waitsFor = new WaitsForGraph();
+        router = new ReplicaRouter(sites, ReplicaRouter.Policy.ROUND_ROBIN);
+        metrics = tm.getMetrics();
+        deadlockPolicy = DeadlockPolicy.DETECT;
+        metrics.watchSites(sites);
+        workers = (siteThreads > 0) ? new SiteWorkers(Math.min(siteThreads, sites.size())) : null;
+    }
+
+
+    /**
+     * Flushes the events reported, syncing the last batch of commits first,
+     * stops the site workers if there are any, waits for checkpoints being
+     * written and syncs and closes the site logs
+     */
+    public void shutdown() {
+        events.flush();
+        if(workers != null) {
+            workers.shutdown();
+        }
+        if(checkpointer != null) {
+            checkpointer.shutdown();
+        }
+
+        IOException failure = null;
+        for(Site site : sites) {
+            try {
+                site.closeLog();
+            } catch (IOException e) {
+                failure = (failure == null) ? e : failure;
+            }
+        }
+        if(failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+    }
+
+
+    /**
+     * Makes every site durable with a write-ahead log in a directory.  Existing
+     * checkpoints and logs are recovered first, one site per worker when running
+     * in parallel.  Checkpoints are written on a background thread.  Commits
+     * are written through to the OS as they are logged.  Without a group
+     * commit, see setGroupCommit, the logs run as asynchronous commit logs -
+     * commits are reported right away and syncing is left to the OS
+     * @param directory - directory holding the site logs, created if missing
+     * @param checkpointEvery - log records per checkpoint on each site, 0 for no checkpoints
+     * @return int - time of the newest record recovered, 0 if there is none
+     */
+    public int openLogs(Path directory, int checkpointEvery) throws IOException {
+        Files.createDirectories(directory);
+        if(checkpointEvery > 0 && checkpointer == null) {
+            checkpointer = new Checkpointer(directory);
+        }
+
+        ArrayList<Integer> newest = onSites(sites, site -> {
+            try {
+                return site.openLog(directory, checkpointEvery, checkpointer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        for(Site site : sites) {
+            router.siteChanged(site);
+        }
+
+        int time = 0;
+        for(int t : newest) {
+            time = Math.max(time, t);
+        }
+        return time;
+    }
+
+
+    /**
+     * Group commits the site logs.  The group commit has to be the event
+     * listener of the Task Manager, so everything reported is held with the
+     * commits waiting for their batch
+     * @param groupCommit - group commit in front of the engine's listener
+     */
+    public void setGroupCommit(GroupCommit groupCommit) {
+        this.groupCommit = groupCommit;
+        groupCommit.watchSites(sites);
+    }
+
+
+    /**
+     * Sets how read-only transactions pick the replica of a replicated variable
+     * they read from
+     * @param policy - round robin, least loaded or power of two choices
+     */
+    public void setReplicaPolicy(ReplicaRouter.Policy policy) {
+        router.setPolicy(policy);
+    }
+
+
+    /**
+     * Sets how deadlocks are dealt with.  Defaults to detecting them
+     * @param policy - detect, wait-die or wound-wait
+     */
+    public void setDeadlockPolicy(DeadlockPolicy policy) {
+        this.deadlockPolicy = policy;
+    }
+
+
+    /**
+     * Gets the replica router, e.g. to see how reads were spread over the sites
+     * @return ReplicaRouter - replica router
+     */
+    public ReplicaRouter getReplicaRouter() {
+        return router;
+    }
+
+
+    /**
+     * Starts catching up recovered sites in the background by copying their
+     * replicated variables from sites that can be read, instead of waiting
+     * for each one to be written.  Sites that are already recovered, e.g.
+     * from their logs, start catching up right away
+     * @param batchSize - most variables looked at per instruction
+     */
+    public void startCatchUp(int batchSize) {
+        catchUp = new CatchUpCopier(sites, batchSize, this::isBeingWritten);
+        catchUpListener = new CatchUpCopier.Listener() {
+            public void copied(Site site, int varId) {
+                retryReadsOn(site, varId);
+            }
+
+            public void caughtUp(Site site) {
+                siteCaughtUp(site);
+            }
+        };
+        for(Site site : sites) {
+            if(site.getSiteState().equals("recovered")) {
+                catchUp.recovered(site);
+            }
+        }
+    }
+
+
+    /**
+     * Syncs and reports the batch of commits waiting if it has waited long
+     * enough.  Called by the Task Manager after every instruction
+     */
+    public void syncCommits() {
+        if(groupCommit != null) {
+            groupCommit.tick();
+        }
+    }
+
+
+    /**
+     * Copies the next batch of variables to the sites catching up.  Called
+     * by the Task Manager after every instruction
+     */
+    public void catchUp() {
+        if(catchUp != null && !catchUp.isIdle()) {
+            catchUp.step(catchUpListener);
+        }
+    }
+
+
+    /**
+     * Checks whether a variable is write locked at a live site or has writers
+     * queued for it.  The write will only be committed to the sites it locks,
+     * so the variable can't be copied to a site catching up until it is done
+     * @param varId - variable ID
+     * @return Boolean - true/false whether the variable is being written
+     */
+    private boolean isBeingWritten(int varId) {
+        for(Site site : sites) {
+            if(!site.getSiteState().equals("failed") && site.isVariableWriteLocked(varId)) {
+                return true;
+            }
+        }
+
+        WaitQueue queued = tm.getTransactionsFromLockQueue(varId);
+        if(queued != null) {
+            for(Transaction T : queued) {
+                if(T.getCurrentInstruction().getOpcode() == Instruction.WRITE) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Puts a recovered site that can read all of its variables again back
+     * with the running sites
+     * @param site - site that caught up
+     */
+    private void siteCaughtUp(Site site) {
+        if(site.getSiteState().equals("recovered")) {
+            site.setSiteState("running");
+            router.siteChanged(site);
+        }
+    }
+
+
+    /**
+     * Retries the reads parked on a site because a variable couldn't be read
+     * there, now that it can.  Readers that got their value from another site
+     * are just let go
+     * @param site - site that caught up on the variable
+     * @param varId - variable ID
+     */
+    private void retryReadsOn(Site site, int varId) {
+        if(!tm.checkWaitQueue(site.getId())) {
+            return;
+        }
+
+        WaitQueue transactions = tm.getWaitQueue(site.getId());
+        int waiting = transactions.size();
+        for(int i = 0; i < waiting && !transactions.isEmpty(); i++) {
+            Transaction T = transactions.poll();
+            Instruction I = T.getCurrentInstruction();
+            if(!T.isRunning() || I.getOpcode() != Instruction.READ || I.getVariable() != varId) {
+                transactions.add(T);
+            } else if(T.getLockedVariableInfo(varId) == null) {
+                read(T, I);
+            }
+        }
+    }
+
+
+    /**
+     * Runs an operation on each of the given sites, on the site workers
+     * when running in parallel
+     * @param targets - sites to run the operation on
+     * @param operation - operation run against a single site
+     * @return ArrayList - result for each site, in site order
+     */
+    private <R> ArrayList<R> onSites(List<Site> targets, Function<Site, R> operation) {
+        if(workers != null) {
+            return workers.runOnSites(targets, operation);
+        }
+
+        ArrayList<R> results = new ArrayList<>(targets.size());
+        for(Site site : targets) {
+            results.add(operation.apply(site));
+        }
+        return results;
+    }
+
+
+    /**
+     * Gets the sites that have not failed
+     * @return ArrayList - running and recovered sites
+     */
+    private ArrayList<Site> getLiveSites() {
+        ArrayList<Site> live = new ArrayList<>(sites.size());
+        for(Site site : sites) {
+            if(!site.getSiteState().equals("failed")) {
+                live.add(site);
+            }
+        }
+        return live;
     }
 
 
@@ -48,8 +345,8 @@ public class DM {
      */
     private ArrayList<Site> initializeSites() {
         ArrayList<Site> sites = new ArrayList<>();
-        for (int i = 1; i <= MAX_SITES; i++) {
-            Site s = new Site(i);
+        for (int i = 1; i <= topology.getSiteCount(); i++) {
+            Site s = new Site(i, topology);
             sites.add(s);
         }
         return sites;
@@ -76,79 +373,212 @@ public class DM {
      */
     public void write(Transaction T, Instruction I) {
 
-        Integer index = I.getVariable();
-        String varId = "x" + index.toString();
+        int varId = I.getVariable();
 
+        // A transaction holding a read lock upgrades it in place and
+        // goes to the front of the lock queue if it has to wait
+        Boolean upgrade = T.getLockedVariableInfo(varId) != null
+                && T.getLockedVariableInfo(varId).getOpcode() == Instruction.READ;
 
         // Getting a count of failed sites for later checking against what is
         // not locked
-        if(index % 2 == 0) {
-
-            if(T.getLockedVariableInfo(varId) != null
-                    && T.getLockedVariableInfo(varId).getInstruction().equals("R")) {
-                for (Site site : sites) {
-                    if (!site.getSiteState().equals("failed") && site.getLockCount(varId) == 1) {
-                        site.removeFromLockTable(T);
-                        T.removeLockedVariable(varId);
-                    }
-                }
+        if(topology.isReplicated(varId)) {
+
+            ArrayList<Site> live = getLiveSites();
+            if(canWriteLockReplicas(T, varId, live)) {
+                writeLockReplicas(T, varId, I, live);
+            } else {
+                waitForLock(varId, T, I, upgrade);
             }
 
-            int failCheck = MAX_SITES - getFailCount();
+        } else {
 
-            // Counts up the number locked
+            Integer siteId = topology.getHomeSite(varId);
+            Site site = sites.get(siteId - 1);
 
-            // If the number of variables that are not locked is greater than or equal to the
-            // failCheck then we can lock
-            int not_locked = 0;
-            for(Site site: sites){
-                not_locked += (!site.getSiteState().equals("failed") && !site.isVariableLocked(varId)) ? 1 : 0;
+            if(!site.getSiteState().equals("failed")) {
+                if(!site.canWriteLock(T, varId)) {
+                    waitForLock(varId, T, I, upgrade);
+                } else {
+                    site.lockVariable(T, varId, I);
+                    grantWriteLock(T, varId, I);
+                }
+            } else if(site.getSiteState().equals("failed")) {
+                tm.addToWaitQueue(siteId, T);
             }
+        }
+    }
+
+
+    /**
+     * Checks whether a transaction can write lock a replicated variable - no
+     * other transaction holds a lock on it at any live site
+     * @param T - Transaction Object
+     * @param varId - variable ID
+     * @param live - sites that are not failed
+     * @return Boolean - true/false whether the write lock can be granted
+     */
+    private boolean canWriteLockReplicas(Transaction T, int varId, ArrayList<Site> live) {
+        int failCheck = sites.size() - getFailCount();
+
+        // If the number of variables that can be write locked is greater than or
+        // equal to the failCheck then we can lock
+        int not_locked = 0;
+        for(Boolean canLock : onSites(live, site -> site.canWriteLock(T, varId))) {
+            not_locked += canLock ? 1 : 0;
+        }
+        return not_locked >= failCheck;
+    }
 
-            if(not_locked >= failCheck) {
-                for (Site site : sites) {
-                    if (!site.getSiteState().equals("failed")) {
-                        site.lockVariable(T, varId, I);
-                    }
-                }
 
-                T.addLockedVariable(varId);
-                T.addLockedVariableType(varId, I);
-                T.removeFromDependsOn(varId);
+    /**
+     * Write locks a replicated variable at every live site
+     * @param T - Transaction Object
+     * @param varId - variable ID
+     * @param I - write Instruction Object
+     * @param live - sites that are not failed
+     */
+    private void writeLockReplicas(Transaction T, int varId, Instruction I, ArrayList<Site> live) {
+        onSites(live, site -> {
+            site.lockVariable(T, varId, I);
+            return null;
+        });
+
+        grantWriteLock(T, varId, I);
+        waitsFor.removeEdges(T, varId);
+    }
 
+
+    /**
+     * Records a granted write lock on the transaction.  A variable that was
+     * already locked by the transaction is not added to its locked list again
+     * @param T - Transaction Object
+     * @param varId - variable ID
+     * @param I - write Instruction Object
+     */
+    private void grantWriteLock(Transaction T, int varId, Instruction I) {
+        if(T.getLockedVariableInfo(varId) == null) {
+            T.addLockedVariable(varId);
+        }
+        T.addLockedVariableType(varId, I);
+        metrics.lockGranted();
+    }
+
+
+    /**
+     * Handles a lock request that conflicts with the transactions holding or
+     * queued for a variable, by the deadlock policy.
+     * <ul>
+     *      <li>DETECT - waits in the lock queue, with waits-for edges for the detector</li>
+     *      <li>WAIT_DIE - waits if it is older than every transaction in its way, else
+     *          it is aborted</li>
+     *      <li>WOUND_WAIT - the younger transactions in its way are aborted and the
+     *          request is tried again, so it only ever waits on older ones</li>
+     * </ul>
+     * @param varId - variable ID
+     * @param T - Transaction Object
+     * @param I - the read or write Instruction Object
+     * @param upgrade - whether the transaction is upgrading a read lock
+     */
+    private void waitForLock(int varId, Transaction T, Instruction I, boolean upgrade) {
+        if(deadlockPolicy == DeadlockPolicy.WAIT_DIE) {
+            if(inTheWay(varId, T, upgrade, false).isEmpty()) {
+                queueForLock(varId, T, I, upgrade);
             } else {
-                checkDependenceOn(varId, T);
-                TM.addToLockQueue(varId, T);
+                abortPrevented(T, varId, EngineListener.AbortReason.WAIT_DIE);
             }
 
-        } else {
-
-            Integer siteId = 1 + index % 10;
-            Site site = sites.get(siteId - 1);
+        } else if(deadlockPolicy == DeadlockPolicy.WOUND_WAIT) {
+            ArrayList<Transaction> wounded = inTheWay(varId, T, upgrade, true);
+            if(wounded.isEmpty()) {
+                queueForLock(varId, T, I, upgrade);
+                return;
+            }
 
-            if(T.getLockedVariableInfo(varId) != null
-                    && T.getLockedVariableInfo(varId).getInstruction().equals("R")
-                    && site.getLockCount(varId) == 1) {
-                if (!site.getSiteState().equals("failed")) {
-                    site.removeFromLockTable(T);
-                    T.removeLockedVariable(varId);
+            for(Transaction t : wounded) {
+                // An earlier abort may already have taken it down
+                if(t.isRunning()) {
+                    abortPrevented(t, varId, EngineListener.AbortReason.WOUND_WAIT);
                 }
             }
-
-            if(!site.getSiteState().equals("failed")) {
-                if(site.isVariableLocked(varId)) {
-                    checkDependenceOn(varId, T);
-                    TM.addToLockQueue(varId, T);
+            // Releasing the wounded locks can hand a lock to a waiter that wounds T in turn
+            if(T.isRunning()) {
+                if(I.getOpcode() == Instruction.READ) {
+                    read(T, I);
                 } else {
-                    site.lockVariable(T, varId, I);
+                    write(T, I);
+                }
+            }
 
-                    T.addLockedVariable(varId);
-                    T.addLockedVariableType(varId, I);
+        } else {
+            checkDependenceOn(varId, T);
+            queueForLock(varId, T, I, upgrade);
+        }
+    }
+
+
+    /**
+     * Gets the transactions in the way of a lock request that are younger or
+     * older than the requester - the lock holders and, unless the request is an
+     * upgrade that goes to the front, the transactions already queued
+     * @param varId - variable ID
+     * @param T - requesting transaction
+     * @param upgrade - whether the transaction is upgrading a read lock
+     * @param younger - true for the younger transactions, false for the older ones
+     * @return ArrayList - transactions in start time order
+     */
+    private ArrayList<Transaction> inTheWay(int varId, Transaction T, boolean upgrade, boolean younger) {
+        ArrayList<Transaction> result = new ArrayList<>();
+        Set<Transaction> holders = getLockHolders(varId);
+        WaitQueue queued = upgrade ? null : tm.getTransactionsFromLockQueue(varId);
+
+        if(holders != null) {
+            for(Transaction t : holders) {
+                if(t != T && (t.getStartTime() > T.getStartTime()) == younger) {
+                    result.add(t);
+                }
+            }
+        }
+        if(queued != null) {
+            for(Transaction t : queued) {
+                if(t != T && (t.getStartTime() > T.getStartTime()) == younger && !result.contains(t)) {
+                    result.add(t);
                 }
-            } else if(site.getSiteState().equals("failed")) {
-                TM.addToWaitQueue(siteId, T);
             }
         }
+
+        result.sort((a, b) -> Integer.compare(a.getStartTime(), b.getStartTime()));
+        return result;
+    }
+
+
+    /**
+     * Aborts a transaction the deadlock prevention policy picked
+     * @param T - transaction to abort
+     * @param varId - variable the conflict was on
+     * @param reason - WAIT_DIE or WOUND_WAIT
+     */
+    private void abortPrevented(Transaction T, int varId, EngineListener.AbortReason reason) {
+        events.aborted(T.getID(), reason, varId);
+        metrics.aborted(reason);
+        abort(T);
+    }
+
+
+    /**
+     * Puts a transaction on a variable's lock queue with the operation it is
+     * waiting to run.  Lock upgrades skip ahead of the other waiters
+     * @param varId - variable ID
+     * @param T - Transaction Object
+     * @param I - the read or write Instruction Object
+     * @param upgrade - whether the transaction is upgrading a read lock
+     */
+    private void queueForLock(int varId, Transaction T, Instruction I, Boolean upgrade) {
+        if(upgrade) {
+            tm.addToLockQueueFront(varId, T, I);
+        } else {
+            tm.addToLockQueue(varId, T, I);
+        }
     }
 
 
@@ -176,93 +606,127 @@ public class DM {
      */
     public void read(Transaction T, Instruction I) {
 
-        String transactionID = "T" + T.getID().toString();
-
         Integer value = -1;
-        Integer index = I.getVariable();
-        String varId = "x" + index.toString();
+        int varId = I.getVariable();
 
 
         // Making sure that the site being checked is not down
-        if(index % 2 == 0) {
+        if(topology.isReplicated(varId)) {
 
             if(T.isReadOnly()) {
 
-                Random randomGenerator = new Random();
-                Integer siteId;
-                Site site;
-                site = sites.get(randomGenerator.nextInt(9));
+                Site site = router.route(varId);
 
-                while(!site.getSiteState().equals("running")) {
-                    siteId = randomGenerator.nextInt(9);
-                    site = sites.get(siteId);
+                if(site == null) {
+                    tm.addToWaitQueue(getUnreadableSite(varId).getId(), T);
+                    return;
                 }
 
-                value = site.getVariable(varId).getPreviousValue(T.getStartTime());
-                System.out.println(transactionID + " read " + varId+ ": " + value.toString());
+                value = site.getPreviousValue(varId, T.getStartTime());
+                events.read(T.getID(), varId, value);
 
             } else {
 
-                int failCheck = MAX_SITES - getFailCount();
-
-                // Counts up the number locked
-
-                // If the number of variables that are not locked is greater than or equal to the
-                // failCheck then we can lock
-                int not_locked = 0;
-                for(Site site: sites){
-                    not_locked += (!site.getSiteState().equals("failed") &&
-                            !site.isVariableWriteLocked(varId)) ? 1 : 0;
-                }
-
-                if(not_locked >= failCheck) {
-
-                    for(int i = 0; i < sites.size(); i++) {
-                        Site site = sites.get(i);
-                        if (site.getSiteState().equals("running") || (site.getSiteState().equals("recovered") &&
-                                site.getVariable(varId).getOkToRead())) {
-                            if (i == 0) {
-                                value = site.getVariable(varId).getValue();
-                                T.addLockedVariable(varId);
-                                T.addLockedVariableType(varId, I);
-                                System.out.println(transactionID +" read " + varId + ": " + value.toString());
-                            }
-                            site.lockVariable(T, varId, I);
-                        } else if(site.getSiteState().equals("recovered") &&
-                                !site.getVariable(varId).getOkToRead()) {
-                            TM.addToWaitQueue(site.getId(), T);
-                        }
-                    }
+                ArrayList<Site> live = getLiveSites();
+                if(canReadLockReplicas(varId, live)) {
+                    readLockReplicas(T, varId, I, live);
                 } else {
-                    checkDependenceOn(varId, T);
-                    TM.addToLockQueue(varId, T);
+                    waitForLock(varId, T, I, false);
                 }
             }
 
         } else {
 
-            Integer siteId = 1 + index % 10;
+            Integer siteId = topology.getHomeSite(varId);
             Site site = sites.get(siteId - 1);
 
             if(!site.getSiteState().equals("failed")) {
 
                 if(T.isReadOnly()) {
-                    value = site.getVariable(varId).getPreviousValue(T.getStartTime());
-                    System.out.println(transactionID + " read " + varId + ": " + value.toString());
+                    value = site.getPreviousValue(varId, T.getStartTime());
+                    events.read(T.getID(), varId, value);
                 } else if(site.isVariableWriteLocked(varId)) {
-                    checkDependenceOn(varId, T);
-                    TM.addToLockQueue(varId, T);
+                    waitForLock(varId, T, I, false);
                 } else {
-                    site.lockVariable(T, varId, I);
-                    value = site.getVariable(varId).getValue();
+                    readLockHome(T, varId, I, site);
+                }
+            } else {
+                tm.addToWaitQueue(siteId, T);
+            }
+        }
+    }
+
+
+    /**
+     * Checks whether a replicated variable can be read locked - it is not
+     * write locked at any live site
+     * @param varId - variable ID
+     * @param live - sites that are not failed
+     * @return Boolean - true/false whether the read lock can be granted
+     */
+    private boolean canReadLockReplicas(int varId, ArrayList<Site> live) {
+        int failCheck = sites.size() - getFailCount();
+
+        // If the number of variables that are not locked is greater than or equal to the
+        // failCheck then we can lock
+        int not_locked = 0;
+        for(Boolean writeLocked : onSites(live, site -> site.isVariableWriteLocked(varId))) {
+            not_locked += writeLocked ? 0 : 1;
+        }
+        return not_locked >= failCheck;
+    }
+
+
+    /**
+     * Read locks a replicated variable at every site it can be read from and
+     * reads it.  Recovered sites that can't serve it yet get the transaction
+     * on their wait queue
+     * @param T - Transaction Object
+     * @param varId - variable ID
+     * @param I - read Instruction Object
+     * @param live - sites that are not failed
+     */
+    private void readLockReplicas(Transaction T, int varId, Instruction I, ArrayList<Site> live) {
+        ArrayList<Site> readable = new ArrayList<>(live.size());
+        for(int i = 0; i < sites.size(); i++) {
+            Site site = sites.get(i);
+            if (site.getSiteState().equals("running") || (site.getSiteState().equals("recovered") &&
+                    site.isOkToRead(varId))) {
+                if (i == 0) {
+                    int value = site.getValue(varId);
                     T.addLockedVariable(varId);
                     T.addLockedVariableType(varId, I);
-                    System.out.println(transactionID + " read " + varId + ": " + value.toString());
+                    metrics.lockGranted();
+                    events.read(T.getID(), varId, value);
                 }
-            } else {
-                TM.addToWaitQueue(siteId, T);
+                readable.add(site);
+            } else if(site.getSiteState().equals("recovered") &&
+                    !site.isOkToRead(varId)) {
+                tm.addToWaitQueue(site.getId(), T);
             }
         }
+
+        onSites(readable, site -> {
+            site.lockVariable(T, varId, I);
+            return null;
+        });
+    }
+
+
+    /**
+     * Read locks an unreplicated variable at its home site and reads it
+     * @param T - Transaction Object
+     * @param varId - variable ID
+     * @param I - read Instruction Object
+     * @param site - home site, not failed
+     */
+    private void readLockHome(Transaction T, int varId, Instruction I, Site site) {
+        site.lockVariable(T, varId, I);
+        int value = site.getValue(varId);
+        T.addLockedVariable(varId);
+        T.addLockedVariableType(varId, I);
+        metrics.lockGranted();
+        events.read(T.getID(), varId, value);
     }
 
 
@@ -274,7 +738,13 @@ public class DM {
      */
     public void fail(Instruction I) {
         Integer siteId = I.getId();
-        sites.get(siteId - 1).setSiteState("failed");
+        sites.get(siteId - 1).fail(tm.getTime());
+        router.siteChanged(sites.get(siteId - 1));
+        if(catchUp != null) {
+            catchUp.failed(sites.get(siteId - 1));
+        }
+        // Counted before the aborts so waiters released by them see the site as down
+        failedSiteCount++;
 
         Set<Transaction> lockedTransactions = sites.get(siteId - 1).getLockedTransactions();
 
@@ -282,7 +752,6 @@ public class DM {
             abort(T);
 
         sites.get(siteId - 1).clearLocktable();
-        failedSiteCount++;
     }
 
 
@@ -295,6 +764,19 @@ public class DM {
     }
 
 
+    /**
+     * Gets the number of old variable versions garbage collected across all sites
+     * @return long - versions reclaimed
+     */
+    public long getVersionsReclaimed() {
+        long reclaimed = 0;
+        for(Site site : sites) {
+            reclaimed += site.getVersionsReclaimed();
+        }
+        return reclaimed;
+    }
+
+
     /**
      * Handles site recovery.  Multiple operations are handled here.  Site is marked
      * as recovered and gets the site to start the recovery process using its
@@ -304,17 +786,27 @@ public class DM {
     public void recover(Instruction I) {
 
         Integer siteId = I.getId();
-        sites.get(siteId - 1).setSiteState("recovered");
-        sites.get(siteId - 1).recover();
+        sites.get(siteId - 1).recover(tm.getTime());
+        router.siteChanged(sites.get(siteId - 1));
         failedSiteCount--;
+        if(catchUp != null) {
+            catchUp.recovered(sites.get(siteId - 1));
+        }
 
-        while(TM.checkWaitQueue(siteId)) {
-            Queue<Transaction> transactions = TM.getWaitQueue(siteId);
-            while(!transactions.isEmpty()) {
-                Transaction T = transactions.remove();
+        // Only the transactions waiting when the site came back are retried.  One that
+        // queues on the site again is waiting on a copy that still can't be read and
+        // stays queued rather than being retried forever.  A reader that already got
+        // its value from another replica is just let go
+        if(tm.checkWaitQueue(siteId)) {
+            WaitQueue transactions = tm.getWaitQueue(siteId);
+            int waiting = transactions.size();
+            for(int i = 0; i < waiting && !transactions.isEmpty(); i++) {
+                Transaction T = transactions.poll();
                 Instruction tTnstruction = T.getCurrentInstruction();
-                if(tTnstruction.getInstruction().equals("R")) {
-                    read(T, tTnstruction);
+                if(tTnstruction.getOpcode() == Instruction.READ) {
+                    if(T.getLockedVariableInfo(tTnstruction.getVariable()) == null) {
+                        read(T, tTnstruction);
+                    }
                 } else {
                     write(T, tTnstruction);
                 }
@@ -323,143 +815,193 @@ public class DM {
     }
 
 
+    /**
+     * Checks the waits-for graph for a cycle closed by the edges added since
+     * the last check.  The youngest transaction on a cycle is aborted.
+     * @param T - transaction whose instruction was just handled
+     */
     public void deadLockCheck(Transaction T) {
 
-        transactionSet.add(T);
-        String currentVarId = "x" + T.getCurrentInstruction().getVariable().toString();
-
-        if(transactionSet.size() > 1) {
+        if(!waitsFor.hasNewEdges()) {
+            return;
+        }
 
-            HashMap<Transaction, LinkedList<Transaction>> adjacencyList = new HashMap<>();
-            HashMap<String, LinkedList<Transaction>> dependsOn = T.getDependsOn();
-            LinkedList<Transaction> dependsOnList = new LinkedList<>();
-            Set<Transaction> dependsOnSet = new HashSet<>();
+        int currentVarId = T.getCurrentInstruction().getVariable();
+        ArrayList<Transaction> cycle = waitsFor.findNewCycle();
+        metrics.deadlockCheck();
 
-            for(HashMap.Entry<String, LinkedList<Transaction>> var : dependsOn.entrySet()) {
-                LinkedList<Transaction> temp = var.getValue();
-                if(!temp.isEmpty())
-                    dependsOnSet.addAll(temp);
+        while(cycle != null) {
+            Transaction tAbort = cycle.get(0);
+            for(Transaction t : cycle) {
+                if(t.getStartTime() > tAbort.getStartTime()) {
+                    tAbort = t;
+                }
             }
+            events.aborted(tAbort.getID(), EngineListener.AbortReason.DEADLOCK, currentVarId);
+            metrics.deadlock();
+            metrics.aborted(EngineListener.AbortReason.DEADLOCK);
+            abort(tAbort);
+            cycle = waitsFor.findNewCycle();
+        }
+    }
 
-            dependsOnList.addAll(dependsOnSet);
-            adjacencyList.put(T, dependsOnList);
 
-            Set<Transaction> checkTransactions = new HashSet<>();
+    /**
+     * Finds every deadlock in the waits-for graph in one pass and breaks them
+     * together, aborting the youngest transaction of each.  Passes repeat
+     * until no deadlock is left, since a component can hold more than one
+     * cycle and released locks can queue transactions again.  Nothing is
+     * searched if no edge was added since the last check
+     */
+    public void detectDeadlocks() {
 
-            Stack<Transaction> tempCheck = new Stack<>();
-            tempCheck.addAll(dependsOnSet);
+        if(!waitsFor.hasNewEdges()) {
+            return;
+        }
 
-            // Now getting all other adjacency lists...
-            while(!tempCheck.isEmpty()) {
-                Transaction t = tempCheck.pop();
-                LinkedList<Transaction> adjacencyCheck = buildDependsOn(t);
-                if(!t.equals(T)) {
-                    adjacencyList.put(t, buildDependsOn(t));
-                    checkTransactions.add(t);
-                    for(Transaction transaction : adjacencyCheck){
-                        if(!tempCheck.contains(transaction))
-                            tempCheck.add(transaction);
+        ArrayList<ArrayList<Transaction>> deadlocks = waitsFor.findDeadlocks(Collections.emptyList());
+        metrics.deadlockCheck();
+
+        while(!deadlocks.isEmpty()) {
+            ArrayList<Transaction> victims = new ArrayList<>();
+            ArrayList<Transaction> survivors = new ArrayList<>();
+            for(ArrayList<Transaction> component : deadlocks) {
+                survivors.addAll(component);
+                Transaction tAbort = null;
+                for(Transaction t : component) {
+                    // Ended while still queued - only its stale edges are left
+                    if(!t.isRunning()) {
+                        waitsFor.removeTransaction(t);
+                    } else if(tAbort == null || t.getStartTime() > tAbort.getStartTime()) {
+                        tAbort = t;
                     }
                 }
-            }
-
-            checkTransactions.add(T);
-
-            // Checks for cycle
-            int numNodesToCheck = checkTransactions.size();
-
-            if(numNodesToCheck > 1) {
-
-                Boolean cycleExists;
-
-                // Will be used in Cycle checker
-                for(Transaction t : checkTransactions) {
-                    visitedCycleCheck.put(t, false);
-                    doneCycleCheck.put(t, false);
+                if(tAbort != null) {
+                    victims.add(tAbort);
                 }
+            }
+            victims.sort((a, b) -> Integer.compare(a.getStartTime(), b.getStartTime()));
 
-                // Checking for cycle
-                cycleExists = checkGraph(adjacencyList);
-
-                // Purge if there is a cycle
-                if(cycleExists) {
-                    Transaction tAbort = T;
-                    Integer age = T.getStartTime();
-                    for(Transaction t : checkTransactions) {
-                        if(t.getStartTime() > age) {
-                            tAbort = t;
-                            age = t.getStartTime();
-                        }
-                    }
-                    System.out.println("T" + tAbort.getID().toString() + " ABORTED due to attempted lock on variable "
-                            + currentVarId);
-                    abort(tAbort);
+            for(Transaction tAbort : victims) {
+                if(!tAbort.isRunning()) {
+                    waitsFor.removeTransaction(tAbort);
+                    continue;
                 }
+                int varId = tAbort.getCurrentInstruction().getVariable();
+                events.aborted(tAbort.getID(), EngineListener.AbortReason.DEADLOCK, varId);
+                metrics.deadlock();
+                metrics.aborted(EngineListener.AbortReason.DEADLOCK);
+                abort(tAbort);
             }
+
+            deadlocks = waitsFor.findDeadlocks(survivors);
+            metrics.deadlockCheck();
         }
     }
 
 
-    private LinkedList<Transaction> buildDependsOn(Transaction T) {
-        LinkedList<Transaction> dependsOn = new LinkedList<>();
-        if(T.checkDependsOn()) {
-            HashMap<String, LinkedList<Transaction>> dOn = new HashMap<>(T.getDependsOn());
-            for(HashMap.Entry<String, LinkedList<Transaction>> ds : dOn.entrySet()) {
-                LinkedList<Transaction> ts = ds.getValue();
-                dependsOn.addAll(ts);
-            }
-        }
-        return dependsOn;
+    /**
+     * Checks whether a transaction is waiting on another for a lock
+     * @param T - transaction object
+     * @return Boolean - true/false whether it has waits-for edges
+     */
+    public Boolean isWaiting(Transaction T) {
+        return waitsFor.isWaiting(T);
     }
 
 
     /**
-     * Handles checking of the lock queue when a transaction
-     * releases its locks.  If it's a read, the queue is checked
-     * again to allow other read transactions following it to also
-     * get a lock
+     * Hands a released variable to the front of its lock queue.  Whether the
+     * head can have the lock is checked once, then the leading readers or
+     * the one writer are granted it directly and resumed with their own
+     * pending read or write, without going through read / write again.  A
+     * head that still conflicts keeps its place.  When the home site has
+     * failed there is nothing to grant and the waiters are sent on to its
+     * wait queue by read / write
      * @param varId - variable ID
      */
-    private void checkLockQueue(String varId) {
-
-        if(!TM.emptyLockQueue(varId)) {
-            Transaction T = TM.handleLockQueue(varId);
-            Instruction instruction = T.getCurrentInstruction();
-            String type = instruction.getInstruction();
-
-            if(type.equals("R")) {
-                read(T, instruction);
-                String check = "R";
-                while(check.equals("R") && !TM.emptyLockQueue(varId)){
-                    check = TM.peekLockQueue(varId);
-                    if(check.equals("R")) {
-                        T = TM.handleLockQueue(varId);
-                        read(T, instruction);
-                    }
+    private void checkLockQueue(int varId) {
+
+        Instruction I = tm.peekLockQueue(varId);
+        if(I == null) {
+            return;
+        }
+
+        boolean reading = I.getOpcode() == Instruction.READ;
+        boolean replicated = topology.isReplicated(varId);
+        Site home = replicated ? null : sites.get(topology.getHomeSite(varId) - 1);
+
+        if(!replicated && home.getSiteState().equals("failed")) {
+            do {
+                Transaction T = tm.handleLockQueue(varId);
+                waitsFor.removeEdges(T, varId);
+                if(reading) {
+                    read(T, I);
+                } else {
+                    write(T, I);
                 }
+                I = tm.peekLockQueue(varId);
+            } while(reading && I != null && I.getOpcode() == Instruction.READ);
+            return;
+        }
+
+        ArrayList<Site> live = replicated ? getLiveSites() : null;
+        Transaction head = tm.getTransactionsFromLockQueue(varId).peek();
+        boolean free;
+        if(reading) {
+            free = replicated ? canReadLockReplicas(varId, live) : !home.isVariableWriteLocked(varId);
+        } else {
+            free = replicated ? canWriteLockReplicas(head, varId, live) : home.canWriteLock(head, varId);
+        }
+        if(!free) {
+            return;
+        }
+
+        do {
+            Transaction T = tm.handleLockQueue(varId);
+            waitsFor.removeEdges(T, varId);
+            if(!reading) {
+                if(replicated) {
+                    writeLockReplicas(T, varId, I, live);
+                } else {
+                    home.lockVariable(T, varId, I);
+                    grantWriteLock(T, varId, I);
+                }
+                return;
+            }
+
+            if(replicated) {
+                readLockReplicas(T, varId, I, live);
             } else {
-                write(T, instruction);
+                readLockHome(T, varId, I, home);
             }
-        }
+            I = tm.peekLockQueue(varId);
+        } while(I != null && I.getOpcode() == Instruction.READ);
     }
 
 
-    private void checkDependenceOn(String varId, Transaction T) {
-        Site site = getSite(Integer.parseInt(varId.replaceAll("\\D+","")));
-        Set<Transaction> tLocks = site.getTransactionsLockedOnVariable(varId);
-        Set<Transaction> tQueue = TM.getTransactionsFromLockQueue(varId);
+    /**
+     * Adds waits-for edges when a transaction is queued on a variable.  The
+     * transaction waits on the lock holders and the transactions already
+     * queued on the variable get an edge to it.
+     * @param varId - variable ID
+     * @param T - transaction being queued
+     */
+    private void checkDependenceOn(int varId, Transaction T) {
+        Set<Transaction> tLocks = getLockHolders(varId);
+        WaitQueue tQueue = tm.getTransactionsFromLockQueue(varId);
 
         if(tLocks != null) {
             for (Transaction t : tLocks) {
                 if(!t.equals(T)) {
-                    T.addToDependsOn(varId, t);
+                    waitsFor.addEdge(T, varId, t);
                 }
             }
         }
 
         if(tQueue != null)
             for(Transaction t : tQueue)
-                t.addToDependsOn(varId, T);
+                waitsFor.addEdge(t, varId, T);
     }
 
 
@@ -468,32 +1010,63 @@ public class DM {
      * @param T - a transaction object
      */
     private void removeTransLock(Transaction T) {
-        for(Site site : sites) {
+        onSites(sites, site -> {
             site.removeFromLockTable(T);
+            return null;
+        });
+    }
+
+
+    /**
+     * Gets the site a read-only read of a replicated variable waits on when no
+     * site can serve it - a live site whose copy can't be read yet, so the read
+     * is retried once the copy catches up, else a failed site, so it is retried
+     * once the site recovers
+     * @param varId - variable ID
+     * @return Site - site to wait on
+     */
+    private Site getUnreadableSite(int varId) {
+        Site failed = null;
+        for(Site site : sites) {
+            if(!site.hasVariable(varId)) {
+                continue;
+            }
+            if(!site.getSiteState().equals("failed")) {
+                return site;
+            }
+            if(failed == null) {
+                failed = site;
+            }
         }
+        return failed;
     }
 
 
     /**
-     * Gets a random live site or odd site
-     * @param index - Site number
+     * Gets the transactions holding a lock on a variable.  Replicas don't all
+     * hold the same locks - a recovered site that can't read a variable takes
+     * no read locks on it - so every live replica is looked at
+     * @param varId - variable ID
+     * @return Set - lock holders, null if every site holding the variable has failed
      */
-    private Site getSite(Integer index) {
-        Site site;
-        if (index % 2 == 0) {
-            Random randomGenerator = new Random();
-            Integer siteId;
-            site = sites.get(randomGenerator.nextInt(9));
+    private Set<Transaction> getLockHolders(int varId) {
+        if(!topology.isReplicated(varId)) {
+            return sites.get(topology.getHomeSite(varId) - 1).getTransactionsLockedOnVariable(varId);
+        }
 
-            while(!site.getSiteState().equals("running")) {
-                siteId = randomGenerator.nextInt(9);
-                site = sites.get(siteId);
+        Set<Transaction> holders = null;
+        for(Site site : sites) {
+            if(site.getSiteState().equals("failed")) {
+                continue;
+            }
+            Set<Transaction> locked = site.getTransactionsLockedOnVariable(varId);
+            if(holders == null) {
+                holders = locked;
+            } else if(locked != null) {
+                holders.addAll(locked);
             }
-        } else {
-            Integer siteId = 1 + index % 10;
-            site = sites.get(siteId - 1);
         }
-        return site;
+        return holders;
     }
 
 
@@ -504,15 +1077,13 @@ public class DM {
      */
     private void abort(Transaction T) {
 
-        TM.abortTransaction(T);
+        tm.abortTransaction(T);
 
         removeTransLock(T);
-        transactionSet.remove(T);
-
-        Queue<String> variables = T.getVariablesLocked();
+        waitsFor.removeTransaction(T);
 
-        while(!variables.isEmpty()) {
-            checkLockQueue(variables.remove());
+        while(T.hasLockedVariables()) {
+            checkLockQueue(T.pollLockedVariable());
         }
     }
 
@@ -520,166 +1091,116 @@ public class DM {
     /**
      * Terminates a transaction.  The function checks the queue of
      * locked variables in the transaction object and handles the commits
-     * and lock releases.
+     * and lock releases.  With group commit the transaction is only counted
+     * as committed once its batch is on disk
      * @param T - transaction object
      */
     public void end(Transaction T) {
 
-        Queue<String> variables = T.getVariablesLocked();
+        while(T.hasLockedVariables()) {
 
-        while(!variables.isEmpty()) {
-
-            String varId = variables.remove();
-            Integer index = Integer.parseInt(varId.replaceAll("\\D+",""));
+            int varId = T.pollLockedVariable();
 
             Integer value = null;
 
-            if(index % 2 == 0) {
+            if(topology.isReplicated(varId)) {
+                ArrayList<Site> replicas = new ArrayList<>();
                 for(Site site: sites) {
-                    if(!site.getSiteState().equals("failed") && (T.getOnSites().get(site.getId()) != 0)
+                    if(!site.getSiteState().equals("failed") && (T.getOnSites(site.getId()) != 0)
                             && site.isVariableLocked(varId)) {
-                        value = site.handleLockTable(T, varId, TM.getTime());
+                        replicas.add(site);
                     }
                 }
+
+                int time = tm.getTime();
+                int lowWaterMark = tm.getLowWaterMark();
+                ArrayList<Integer> committed = onSites(replicas,
+                        site -> site.handleLockTable(T, varId, time, lowWaterMark));
+                if(!committed.isEmpty())
+                    value = committed.get(committed.size() - 1);
                 if(value != null)
-                    System.out.println("T" + T.getID().toString() + " committed " + varId +
-                            " to all available sites " + ": " + value.toString());
+                    events.committed(T.getID(), varId, value, 0);
 
             } else {
-                Integer site_no = 1 + index % 10;
+                Integer site_no = topology.getHomeSite(varId);
                 Site site = sites.get(site_no - 1);
-                value = site.handleLockTable(T, varId, TM.getTime());
+                value = site.handleLockTable(T, varId, tm.getTime(), tm.getLowWaterMark());
                 if(value != null)
-                    System.out.println("T" + T.getID().toString() +" committed " + varId + " to Site " +
-                            sites.get(0).getId() + ": " + value.toString());
+                    events.committed(T.getID(), varId, value, sites.get(0).getId());
             }
             checkLockQueue(varId);
         }
+        waitsFor.removeTransaction(T);
         T.stopTransaction();
+        if(groupCommit != null) {
+            groupCommit.transactionCommitted(T);
+        } else {
+            metrics.commit(T.isReadOnly(), T.getOperationCount());
+        }
     }
 
 
     /**
-     * Prints all committed variables at all sites sorted by site
+     * Reports all committed variables at all sites sorted by site
      */
     public void dump() {
-        System.out.println("\n=== output of dump ===");
+        Dump dump = new Dump(0);
         for(Site site: this.sites){
-            int commitCount = 0;
-            System.out.println("Site " + site.getId().toString());
-            for(HashMap.Entry<String, Variable> variable : site.getAllVariables().entrySet()) {
-                if(variable.getValue().checkCommitted()) {
-                    System.out.println(variable.getKey() + ": " + variable.getValue().getValue());
-                    commitCount++;
-                }
-            }
-            if(commitCount != site.getVariableCount()) {
-                System.out.println("All other variables have their initial values");
-            }
-            System.out.println("");
+            addSiteToDump(dump, site);
         }
+        events.dumped(dump);
     }
 
 
     /**
-     * Dump function that prints out the committed values of a specific
+     * Dump function that reports the committed values of a specific
      * variable at all sites
      * @param x - variable ID
      */
-    public void dump(String x) {
-        System.out.println("\n=== output of dump ===");
-        System.out.println(x);
+    public void dumpVariable(int x) {
+        Dump dump = new Dump(x);
+        int[] variable = {x};
+        int[] value = new int[1];
         for(Site site: this.sites){
-            if(site.getVariable(x).checkCommitted()){
-                System.out.println("Site " + site.getId().toString() + ": " + site.getVariable(x).getValue());
+            if(site.hasVariable(x) && site.getVariable(x).checkCommitted()){
+                value[0] = site.getVariable(x).getValue();
+                dump.addSite(site.getId(), variable, value, 1, false);
             }
         }
+        events.dumped(dump);
     }
 
 
     /**
-     * Dump function that prints out the variables that have been
+     * Dump function that reports the variables that have been
      * committed at a site
      * @param i - site ID
      */
     public void dump(Integer i) {
-        Site site = sites.get(i);
-        System.out.println("\n=== output of dump ===");
-        int commitCount = 0;
-        System.out.println("Site " + site.getId().toString());
-        for(HashMap.Entry<String, Variable> variable : site.getAllVariables().entrySet()) {
-            if(variable.getValue().checkCommitted()) {
-                System.out.println(variable.getKey() + ": " + variable.getValue().getValue());
-                commitCount++;
-            }
-        }
-        if(commitCount != site.getVariableCount()) {
-            System.out.println("All other variables have their initial values");
-        }
-        System.out.println("");
+        Dump dump = new Dump(0);
+        addSiteToDump(dump, sites.get(i));
+        events.dumped(dump);
     }
 
 
     /**
-     * Inspired by Siegel's DFS cycle check pseudocode of a directed graph.
-     * This is the driver.
-     * @param adjacencyList - HashMap of transactions and their adjanency lists
+     * Copies the committed variables of a site into a dump
+     * @param dump - dump being made
+     * @param site - site object
      */
-    private Boolean checkGraph(HashMap<Transaction, LinkedList<Transaction>> adjacencyList) {
-
-        Boolean foundCycle = false;
-        ArrayList<Boolean> cycleTracking = new ArrayList<>();
-
-        for(HashMap.Entry<Transaction, Boolean> toVisit : visitedCycleCheck.entrySet()) {
-            if(!toVisit.getValue()) {
-                dfsCycleCheck(adjacencyList, toVisit.getKey(), cycleTracking);
-            }
-        }
-
-        // Since the DFS is done recursively, an array list cycleTracking is filled
-        // with Booleans when checking for cycles using DFS and then checked here
-        // to see if a cycle was found
-        for(Boolean check : cycleTracking) {
-            if(check)
-                foundCycle = true;
-        }
-
-        return foundCycle;
-    }
-
-
-    /**
-     * Actual DFS into directed graph via adjacency lists
-     * @param adjacencyList - HashMap of transactions and their adjanency lists
-     * @param v - parent Transaction
-     * @param cycleTracking - keeps track of whether a cycle has been found
-     */
-    private void dfsCycleCheck(HashMap<Transaction, LinkedList<Transaction>> adjacencyList, Transaction v,
-                               ArrayList<Boolean> cycleTracking) {
-
-        // Tagging parent Transaction as seen
-        visitedCycleCheck.put(v, true);
-
-        Stack<Transaction> neighbors = new Stack<>();
-
-        // Getting parent Transaction's neighbors
-        if(adjacencyList.get(v) != null)
-            neighbors.addAll(adjacencyList.get(v));
-
-        // DFS neighors.  If visited but not done yet,
-        // there is a cycle
-        while(!neighbors.isEmpty()) {
-            Transaction w = neighbors.pop();
-            if (!visitedCycleCheck.get(w)) {
-                cycleTracking.add(false);
-                dfsCycleCheck(adjacencyList, w, cycleTracking);
-            } else if (!doneCycleCheck.get(w)) {
-                cycleTracking.add(true);
+    private void addSiteToDump(Dump dump, Site site) {
+        ArrayList<Variable> variables = site.getAllVariables();
+        int[] ids = new int[variables.size()];
+        int[] values = new int[variables.size()];
+        int commitCount = 0;
+        for(Variable variable : variables) {
+            if(variable.checkCommitted()) {
+                ids[commitCount] = variable.getIndex();
+                values[commitCount] = variable.getValue();
+                commitCount++;
             }
         }
-
-        // Tagging parent Transaction as done
-        doneCycleCheck.put(v, true);
+        dump.addSite(site.getId(), ids, values, commitCount, commitCount != site.getVariableCount());
     }
 
 
@@ -690,12 +1211,9 @@ public class DM {
      * @return Boolean - returns t/f if trnsaction has a write lock on variable
      */
     public Boolean hasWriteLock(Transaction T, Instruction I) {
-        String variable = "x" + I.getVariable().toString();
-        String transactionID = "T" + T.getID();
-        Integer value;
-        if (T.checkLockedVariableType(variable) != null && T.checkLockedVariableType(variable).equals("W")) {
-            value = T.getLockedVariableInfo(variable).getValue();
-            System.out.println(transactionID + " read " + variable + ": " + value.toString());
+        int variable = I.getVariable();
+        if (T.checkLockedVariableType(variable) == Instruction.WRITE) {
+            events.read(T.getID(), variable, T.getLockedVariableInfo(variable).getValue());
             return true;
         }
         return false;
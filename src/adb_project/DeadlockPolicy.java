@@ -0,0 +1,22 @@
+/**
+ * <h1>DeadlockPolicy</h1>
+ * How the Data Manager deals with deadlocks when a lock request
+ * conflicts with the transactions holding or queued for a variable.
+ * <ul>
+ *      <li>DETECT - always wait, and abort the youngest transaction of any
+ *          cycle found in the waits-for graph</li>
+ *      <li>WAIT_DIE - an older requester waits, a younger one is aborted</li>
+ *      <li>WOUND_WAIT - an older requester aborts the younger transactions in
+ *          its way, a younger one waits</li>
+ * </ul>
+ * The two prevention policies decide on start times at conflict time, so
+ * every wait is between transactions in the same age order and no cycle
+ * can form.  They keep no waits-for graph.
+ */
+
+package adb_project;
+
+
+public enum DeadlockPolicy {
+    DETECT, WAIT_DIE, WOUND_WAIT
+}
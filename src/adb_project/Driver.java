@@ -15,7 +15,11 @@ package adb_project;
 
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
 
 
 public class Driver {
@@ -28,7 +32,7 @@ public class Driver {
         Boolean testAll = true;
 
         if (testAll) {
-            for (int i = 1; i < 38; i++) {
+            for (int i = 1; i < 47; i++) {
                 file = "input_" + i + ".txt";
                 if (i < 10) {
                     path = cwd + "/tests/" + file;
@@ -40,11 +44,8 @@ public class Driver {
                 System.out.println("Currently testing: " + file);
                 System.out.println("--------------------------");
 
-                Parser parser = new Parser();
-                ArrayList<Instruction> instructions = parser.getInstructions(path);
-
-                TM tm = new TM(instructions);
-                tm.processInstructions();
+                // Every test starts from its own logs
+                run(path, testSettings(cwd + "/tests/input_" + i + ".properties"), "input_" + i);
             }
         } else {
             if (args.length == 0) {
@@ -57,11 +58,124 @@ public class Driver {
                 path = cwd + "/" + args[0];
             }
 
-            Parser parser = new Parser();
-            ArrayList<Instruction> instructions = parser.getInstructions(path);
+            run(path, System.getProperties(), null);
+        }
+    }
+
+
+    /**
+     * Gets the settings of a test.  A test that depends on a setting keeps
+     * it in input_N.properties next to its input, with the same keys as the
+     * system properties.  Those override the system properties, so the test
+     * replays the same way however Driver is started.  Logs a test turns on
+     * itself go to a fresh temporary directory, so no run replays the logs
+     * of the one before
+     * @param file - test's properties file, which need not exist
+     * @return Properties - settings, falling back to the system properties
+     */
+    private static Properties testSettings(String file) throws IOException {
+        Path path = Paths.get(file);
+        if (!Files.exists(path)) {
+            return System.getProperties();
+        }
+
+        Properties settings = new Properties(System.getProperties());
+        try (Reader in = Files.newBufferedReader(path)) {
+            settings.load(in);
+        }
+        if (settings.containsKey("wal.dir")) {
+            Path logs = Files.createTempDirectory("adb").resolve(settings.getProperty("wal.dir"));
+            settings.setProperty("wal.dir", logs.toString());
+        }
+        return settings;
+    }
+
+
+    /**
+     * Replays a trace
+     * @param path - trace file
+     * @param settings - settings, with the same keys as the system properties
+     * @param name - log directory of the trace under wal.dir, null to use wal.dir itself
+     */
+    private static void run(String path, Properties settings, String name) throws IOException {
+        // Site worker threads, e.g. -Dsite.threads=4.  0 runs sites serially
+        int siteThreads = intSetting(settings, "site.threads", 0);
+
+        // Site write-ahead logs, e.g. -Dwal.dir=logs -Dwal.syncEvery=64 -Dwal.syncDelay=64
+        // -Dwal.checkpointEvery=100000.  Off unless wal.dir is set.  wal.syncEvery=0 is asynchronous commit
+        String walDir = settings.getProperty("wal.dir");
+        int walSyncEvery = intSetting(settings, "wal.syncEvery", 64);
+        int walSyncDelay = intSetting(settings, "wal.syncDelay", GroupCommit.DEFAULT_MAX_DELAY);
+        int walCheckpointEvery = intSetting(settings, "wal.checkpointEvery", 100000);
+
+        // Variables a recovered site copies per instruction, e.g. -Dcatchup.batch=4.  0 waits for writes
+        int catchUpBatch = intSetting(settings, "catchup.batch", 0);
 
-            TM tm = new TM(instructions);
+        // Replica read-only reads go to, e.g. -Dreplica.policy=power_of_two
+        ReplicaRouter.Policy replicaPolicy =
+                ReplicaRouter.Policy.valueOf(settings.getProperty("replica.policy", "round_robin").toUpperCase());
+
+        // How deadlocks are dealt with, e.g. -Ddeadlock.policy=wound_wait
+        DeadlockPolicy deadlockPolicy =
+                DeadlockPolicy.valueOf(settings.getProperty("deadlock.policy", "detect").toUpperCase());
+        // Instructions between batched deadlock passes, e.g. -Ddeadlock.checkEvery=32.  0 checks after every read and write
+        int deadlockCheckEvery = intSetting(settings, "deadlock.checkEvery", 0);
+
+        // Restart aborted transactions, e.g. -Dretry.max=3 -Dretry.backoff=8.  Off unless set
+        int retryMax = intSetting(settings, "retry.max", 0);
+        int retryBackoff = intSetting(settings, "retry.backoff", 8);
+
+        // Metrics, e.g. -Dmetrics.file=adb.prom -Dmetrics.period=1000 -Dmetrics.jmx=true.  Off unless set
+        String metricsFile = settings.getProperty("metrics.file");
+        long metricsPeriod = Long.parseLong(settings.getProperty("metrics.period", "1000"));
+        boolean metricsJmx = Boolean.parseBoolean(settings.getProperty("metrics.jmx"));
+
+        Parser parser = new Parser();
+        try (MappedInstructionStream instructions = parser.mapInstructions(path)) {
+            TM tm = new TM(instructions, Topology.DEFAULT, siteThreads);
+            tm.setCatchUpBatch(catchUpBatch);
+            tm.setReplicaPolicy(replicaPolicy);
+            tm.setDeadlockPolicy(deadlockPolicy);
+            tm.setDeadlockCheckEvery(deadlockCheckEvery);
+            tm.setRetries(retryMax, retryBackoff);
+            configureMetrics(tm, metricsFile, metricsPeriod, metricsJmx);
+            if (walDir != null) {
+                Path logs = (name == null) ? Paths.get(walDir) : Paths.get(walDir, name);
+                tm.setLogDirectory(logs, walSyncEvery, walSyncDelay);
+                tm.setCheckpointEvery(walCheckpointEvery);
+            }
             tm.processInstructions();
         }
     }
+
+
+    /**
+     * Gets an int setting
+     * @param settings - settings
+     * @param key - setting name
+     * @param defaultValue - value if the setting is not there
+     * @return int - value
+     */
+    private static int intSetting(Properties settings, String key, int defaultValue) {
+        String value = settings.getProperty(key);
+        return (value == null) ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+
+    /**
+     * Turns on the metrics exports asked for.  Each test gets a fresh set of
+     * metrics, written to the same file and MBean name as it runs
+     * @param tm - Task Manager
+     * @param file - metrics file, null for none
+     * @param period - time between dumps in milliseconds
+     * @param jmx - whether to register the metrics MBean
+     */
+    private static void configureMetrics(TM tm, String file, long period, boolean jmx) {
+        if (file != null) {
+            tm.setMetricsFile(Paths.get(file), period);
+        }
+        if (jmx) {
+            tm.setMetricsMBean("Driver");
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,132 @@
+/**
+ * <h1>Dump</h1>
+ * Committed values asked for by a dump instruction, copied out of the
+ * sites when the dump is made so a listener can handle it later.  A
+ * dump has a section per site - every committed variable of the site,
+ * or for a dump of one variable, just that variable's value.
+ */
+
+package adb_project;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+public class Dump {
+
+    private int variable;
+    private ArrayList<Section> sections;
+
+
+    /**
+     * Committed values of one site
+     */
+    public static final class Section {
+
+        private int siteId;
+        private int[] variables;
+        private int[] values;
+        private boolean othersInitial;
+
+
+        private Section(int siteId, int[] variables, int[] values, boolean othersInitial) {
+            this.siteId = siteId;
+            this.variables = variables;
+            this.values = values;
+            this.othersInitial = othersInitial;
+        }
+
+
+        /**
+         * Gets the site ID
+         * @return int - site ID
+         */
+        public int getSiteId() {
+            return siteId;
+        }
+
+
+        /**
+         * Gets the number of committed variables listed
+         * @return int - variable count
+         */
+        public int size() {
+            return variables.length;
+        }
+
+
+        /**
+         * Gets a variable ID
+         * @param i - index, variables are in ID order
+         * @return int - variable ID
+         */
+        public int getVariable(int i) {
+            return variables[i];
+        }
+
+
+        /**
+         * Gets a committed value
+         * @param i - index, parallel to the variables
+         * @return int - value
+         */
+        public int getValue(int i) {
+            return values[i];
+        }
+
+
+        /**
+         * Checks whether the site stores variables that are not listed because
+         * they still have their initial values
+         * @return Boolean - true/false whether some variables were left out
+         */
+        public boolean hasOthersInitial() {
+            return othersInitial;
+        }
+    }
+
+
+    /**
+     * Creates an empty dump
+     * @param variable - variable ID for a dump of one variable, 0 for a dump of sites
+     */
+    public Dump(int variable) {
+        this.variable = variable;
+        this.sections = new ArrayList<>();
+    }
+
+
+    /**
+     * Adds a site's committed values
+     * @param siteId - site ID
+     * @param variables - variable IDs in order, the first count are used
+     * @param values - committed values, parallel to variables
+     * @param count - number of variables
+     * @param othersInitial - whether the site stores variables left out because
+     *                        they still have their initial values
+     */
+    public void addSite(int siteId, int[] variables, int[] values, int count, boolean othersInitial) {
+        sections.add(new Section(siteId, Arrays.copyOf(variables, count), Arrays.copyOf(values, count),
+                othersInitial));
+    }
+
+
+    /**
+     * Gets the variable of a dump of one variable
+     * @return int - variable ID, 0 for a dump of sites
+     */
+    public int getVariable() {
+        return variable;
+    }
+
+
+    /**
+     * Gets the sections in site order
+     * @return List - one section per site
+     */
+    public List<Section> getSections() {
+        return sections;
+    }
+}
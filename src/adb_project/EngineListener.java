@@ -0,0 +1,80 @@
+/**
+ * <h1>EngineListener</h1>
+ * Receives what the Task Manager and Data Manager report as they run:
+ * read results, commits, aborts with their reason, restarts and dumps.  Events
+ * are typed calls with the raw values, so nothing is formatted unless
+ * a listener wants text.
+ * <p>
+ * Events come from the thread processing instructions, one at a time
+ * and in order.
+ */
+
+package adb_project;
+
+
+public interface EngineListener {
+
+    /**
+     * Why a transaction was aborted
+     * <ul>
+     *      <li>DEADLOCK - picked to break a waits-for cycle, cause is the variable being locked</li>
+     *      <li>SITE_FAILURE - a site it used failed, cause is the site ID</li>
+     *      <li>WAIT_DIE - younger than a transaction in its way under wait-die, cause is
+     *          the variable being locked</li>
+     *      <li>WOUND_WAIT - in the way of an older transaction under wound-wait, cause is
+     *          the variable being locked</li>
+     * </ul>
+     */
+    enum AbortReason {
+        DEADLOCK, SITE_FAILURE, WAIT_DIE, WOUND_WAIT
+    }
+
+
+    /**
+     * A transaction read a variable
+     * @param transaction - transaction ID
+     * @param varId - variable ID
+     * @param value - value read
+     */
+    void read(int transaction, int varId, int value);
+
+
+    /**
+     * A transaction committed a write
+     * @param transaction - transaction ID
+     * @param varId - variable ID
+     * @param value - value committed
+     * @param siteId - site the write was committed to, 0 for all available sites
+     */
+    void committed(int transaction, int varId, int value, int siteId);
+
+
+    /**
+     * A transaction was aborted
+     * @param transaction - transaction ID
+     * @param reason - why it was aborted
+     * @param cause - variable ID or site ID, depending on the reason
+     */
+    void aborted(int transaction, AbortReason reason, int cause);
+
+
+    /**
+     * An aborted transaction was begun again by the retry scheduler
+     * @param transaction - transaction ID
+     * @param retry - how many times it has been restarted, 1 for the first
+     */
+    void restarted(int transaction, int retry);
+
+
+    /**
+     * Committed values were dumped
+     * @param dump - the values, as they were when the dump was asked for
+     */
+    void dumped(Dump dump);
+
+
+    /**
+     * Makes sure every event so far has been handled, e.g. written out
+     */
+    void flush();
+}
@@ -0,0 +1,322 @@
+/**
+ * <h1>EngineMetrics</h1>
+ * The metrics a Task Manager and its Data Manager keep while running:
+ * operations by type, lock grants and queued lock requests, lock and
+ * wait queue depths, deadlocks, aborts by reason, commits, retries,
+ * goodput and the versions kept per variable.  Every update is a striped counter add,
+ * so counting costs next to nothing on the processing path.
+ */
+
+package adb_project;
+
+
+import java.util.Collections;
+import java.util.List;
+
+
+public class EngineMetrics {
+
+    private Metrics registry;
+    private Metrics.Counter[] operations;
+    private Metrics.Counter lockGrants;
+    private Metrics.Counter lockQueued;
+    private Metrics.Counter lockQueueDepth;
+    private Metrics.Counter waitQueueDepth;
+    private Metrics.Counter deadlocks;
+    private Metrics.Counter deadlockChecks;
+    private Metrics.Counter[] aborts;
+    private Metrics.Counter commits;
+    private Metrics.Counter readOnlyCommits;
+    private Metrics.Counter committedOperations;
+    private Metrics.Counter retries;
+    private Metrics.Counter retriesGivenUp;
+    private volatile long startNanos;
+    private volatile long stopNanos;
+    private volatile List<Site> sites;
+    private int watchedSites;
+
+
+    /**
+     * Creates the engine metrics in a new registry
+     *
+     * <ul>
+     *      <li>operations - instructions handled, by opcode</li>
+     *      <li>lockQueueDepth / waitQueueDepth - transactions waiting on variables / sites</li>
+     *      <li>aborts - aborts by reason</li>
+     *      <li>sites - sites the version gauges read, none until a Data Manager is made</li>
+     * </ul>
+     */
+    public EngineMetrics() {
+        registry = new Metrics("adb_");
+
+        operations = new Metrics.Counter[Instruction.OPCODE_COUNT];
+        for (int opcode = 0; opcode < operations.length; opcode++) {
+            operations[opcode] = registry.counter("operations_total", "Instructions handled by type",
+                    "type", Instruction.getName(opcode));
+        }
+
+        lockGrants = registry.counter("lock_grants_total", "Lock requests granted right away or from a queue");
+        lockQueued = registry.counter("lock_queued_total", "Lock requests that had to wait in a lock queue");
+        lockQueueDepth = registry.gauge("lock_queue_depth", "Transactions waiting in variable lock queues");
+        waitQueueDepth = registry.gauge("wait_queue_depth", "Transactions waiting in site wait queues");
+        deadlocks = registry.counter("deadlocks_total", "Deadlock cycles found");
+        deadlockChecks = registry.counter("deadlock_checks_total", "Searches of the waits-for graph for deadlocks");
+        EngineListener.AbortReason[] reasons = EngineListener.AbortReason.values();
+        aborts = new Metrics.Counter[reasons.length];
+        for (EngineListener.AbortReason reason : reasons) {
+            aborts[reason.ordinal()] = registry.counter("aborts_total", "Transactions aborted by reason",
+                    "reason", reason.name().toLowerCase());
+        }
+        commits = registry.counter("commits_total", "Transactions committed by type", "type", "read_write");
+        readOnlyCommits = registry.counter("commits_total", "Transactions committed by type", "type", "read_only");
+        committedOperations = registry.counter("committed_operations_total", "Reads and writes of committed transactions");
+        retries = registry.counter("retries_total", "Aborted transactions restarted");
+        retriesGivenUp = registry.counter("retries_given_up_total", "Aborted transactions given up on after their last retry");
+        registry.gauge("goodput", "Committed reads and writes per second of processing", this::getGoodput);
+        sites = Collections.emptyList();
+    }
+
+
+    /**
+     * Points the site gauges at the sites of a Data Manager.  They are worked
+     * out when the metrics are read, from counts the sites keep as they commit,
+     * and follow the newest Data Manager if the Task Manager makes another
+     * @param sites - all sites, site i at index i - 1
+     */
+    public void watchSites(List<Site> sites) {
+        this.sites = sites;
+        if (watchedSites == 0) {
+            registry.gauge("versions_per_variable", "Versions kept per stored variable across all sites",
+                    this::versionsPerVariable);
+            registry.counter("versions_reclaimed_total", "Old versions garbage collected across all sites", () -> {
+                long reclaimed = 0;
+                for (Site site : this.sites) {
+                    reclaimed += site.getVersionsReclaimed();
+                }
+                return reclaimed;
+            });
+        }
+
+        for (; watchedSites < sites.size(); watchedSites++) {
+            int index = watchedSites;
+            String id = Integer.toString(index + 1);
+            registry.gauge("site_versions", "Versions kept on a site", () -> {
+                List<Site> current = this.sites;
+                return (index < current.size()) ? current.get(index).getVersionTotal() : 0;
+            }, "site", id);
+            registry.gauge("site_variables", "Variables stored on a site", () -> {
+                List<Site> current = this.sites;
+                return (index < current.size()) ? current.get(index).getStoredVariableCount() : 0;
+            }, "site", id);
+        }
+    }
+
+
+    /**
+     * Works out the versions kept per stored variable over every site
+     * @return double - average version chain length, 0 if nothing is stored
+     */
+    private double versionsPerVariable() {
+        long versions = 0;
+        long variables = 0;
+        for (Site site : sites) {
+            versions += site.getVersionTotal();
+            variables += site.getStoredVariableCount();
+        }
+        return (variables == 0) ? 0 : (double) versions / variables;
+    }
+
+
+    /**
+     * Gets the registry holding the metrics, for exporting them
+     * @return Metrics - registry
+     */
+    public Metrics getRegistry() {
+        return registry;
+    }
+
+
+    /**
+     * Counts an instruction
+     * @param opcode - instruction opcode
+     */
+    public void operation(int opcode) {
+        operations[opcode].increment();
+    }
+
+
+    /**
+     * Counts a lock granted to a transaction
+     */
+    public void lockGranted() {
+        lockGrants.increment();
+    }
+
+
+    /**
+     * Counts a lock request put on a lock queue
+     */
+    public void lockQueued() {
+        lockQueued.increment();
+    }
+
+
+    /**
+     * Gets the gauge of transactions waiting in lock queues, kept up to date by the queues
+     * @return Metrics.Counter - depth gauge
+     */
+    public Metrics.Counter getLockQueueDepth() {
+        return lockQueueDepth;
+    }
+
+
+    /**
+     * Gets the gauge of transactions waiting in site wait queues, kept up to date by the queues
+     * @return Metrics.Counter - depth gauge
+     */
+    public Metrics.Counter getWaitQueueDepth() {
+        return waitQueueDepth;
+    }
+
+
+    /**
+     * Counts a deadlock cycle found
+     */
+    public void deadlock() {
+        deadlocks.increment();
+    }
+
+
+    /**
+     * Counts a search of the waits-for graph
+     */
+    public void deadlockCheck() {
+        deadlockChecks.increment();
+    }
+
+
+    /**
+     * Counts an aborted transaction
+     * @param reason - why it was aborted
+     */
+    public void aborted(EngineListener.AbortReason reason) {
+        aborts[reason.ordinal()].increment();
+    }
+
+
+    /**
+     * Counts a committed transaction and the reads and writes it did
+     * @param readOnly - whether the transaction was read only
+     * @param operations - reads and writes of the transaction
+     */
+    public void commit(boolean readOnly, int operations) {
+        (readOnly ? readOnlyCommits : commits).increment();
+        committedOperations.add(operations);
+    }
+
+
+    /**
+     * Counts an aborted transaction being restarted
+     */
+    public void retried() {
+        retries.increment();
+    }
+
+
+    /**
+     * Counts an aborted transaction given up on
+     */
+    public void retriesGivenUp() {
+        retriesGivenUp.increment();
+    }
+
+
+    /**
+     * Marks the start of processing, which goodput is measured from
+     */
+    public void startClock() {
+        stopNanos = 0;
+        startNanos = System.nanoTime();
+    }
+
+
+    /**
+     * Marks the end of processing, which goodput is measured to
+     */
+    public void stopClock() {
+        stopNanos = System.nanoTime();
+    }
+
+
+    /**
+     * Works out the goodput - reads and writes of committed transactions per
+     * second, over the processing so far or all of it once it has stopped
+     * @return double - committed operations per second, 0 before processing starts
+     */
+    public double getGoodput() {
+        long start = startNanos;
+        if (start == 0) {
+            return 0;
+        }
+        long stop = stopNanos;
+        long elapsed = ((stop != 0) ? stop : System.nanoTime()) - start;
+        return (elapsed <= 0) ? 0 : committedOperations.get() * 1e9 / elapsed;
+    }
+
+
+    /**
+     * Gets the number of transactions aborted for a reason so far
+     * @param reason - abort reason
+     * @return long - aborts
+     */
+    public long getAbortCount(EngineListener.AbortReason reason) {
+        return aborts[reason.ordinal()].get();
+    }
+
+
+    /**
+     * Gets the number of transactions committed so far
+     * @param readOnly - whether to count read-only or read-write transactions
+     * @return long - commits
+     */
+    public long getCommitCount(boolean readOnly) {
+        return (readOnly ? readOnlyCommits : commits).get();
+    }
+
+
+    /**
+     * Gets the number of reads and writes of committed transactions so far
+     * @return long - committed operations
+     */
+    public long getCommittedOperationCount() {
+        return committedOperations.get();
+    }
+
+
+    /**
+     * Gets the number of aborted transactions restarted so far
+     * @return long - retries
+     */
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+
+    /**
+     * Gets the number of aborted transactions given up on after their last retry
+     * @return long - transactions given up on
+     */
+    public long getRetriesGivenUpCount() {
+        return retriesGivenUp.get();
+    }
+
+
+    /**
+     * Gets the number of instructions of a type handled so far
+     * @param opcode - instruction opcode
+     * @return long - instructions handled
+     */
+    public long getOperationCount(int opcode) {
+        return operations[opcode].get();
+    }
+}
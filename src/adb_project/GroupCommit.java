@@ -0,0 +1,206 @@
+/**
+ * <h1>GroupCommit</h1>
+ * Holds back what the engine reports until the commits it depends on are
+ * on disk.  A transaction's commit records reach the OS as soon as they
+ * are logged, but nothing is reported from its first committed write
+ * until every log with unsynced commits has been forced.  The commits
+ * waiting form a batch that shares one fsync per site: the batch is
+ * synced once it holds syncEvery transactions, or once its first commit
+ * has waited maxDelay ticks, so the last partial batch of a quiet period
+ * is never held for long.
+ * <p>
+ * Every event is held while a batch is waiting, not just the commits, so
+ * nothing that may have seen an unsynced write - e.g. a read of it - is
+ * reported before the write is durable, and events come out in the same
+ * order as without a log.  Committed transactions are counted in the
+ * metrics once their batch is synced.
+ */
+
+package adb_project;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+
+public class GroupCommit implements EngineListener {
+
+    public static final int DEFAULT_MAX_DELAY = 64;
+
+    private EngineListener delegate;
+    private EngineMetrics metrics;
+    private IntSupplier clock;
+    private int syncEvery;
+    private int maxDelay;
+    private List<Site> sites;
+    private ArrayList<Consumer<EngineListener>> held;
+    private int transactions;
+    private int oldest;
+    private long batches;
+
+
+    /**
+     * Creates a group commit in front of a listener
+     * @param delegate - listener the events are passed on to
+     * @param metrics - counts the committed transactions
+     * @param clock - current time, e.g. TM.getTime
+     * @param syncEvery - transactions per batch, at least 1
+     * @param maxDelay - ticks the first commit of a batch waits at most
+     *
+     * <ul>
+     *      <li>held - events waiting for the batch, in the order they were reported</li>
+     *      <li>transactions - transactions committed in the batch</li>
+     *      <li>oldest - time of the first commit of the batch</li>
+     * </ul>
+     */
+    public GroupCommit(EngineListener delegate, EngineMetrics metrics, IntSupplier clock, int syncEvery,
+                       int maxDelay) {
+        if (syncEvery < 1) {
+            throw new IllegalArgumentException("syncEvery must be at least 1");
+        }
+
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.clock = clock;
+        this.syncEvery = syncEvery;
+        this.maxDelay = Math.max(0, maxDelay);
+        this.sites = Collections.emptyList();
+        this.held = new ArrayList<>();
+    }
+
+
+    /**
+     * Sets the sites whose logs are synced
+     * @param sites - all sites, the durable ones are synced
+     */
+    public void watchSites(List<Site> sites) {
+        this.sites = sites;
+    }
+
+
+    /**
+     * Checks whether a batch is waiting to be synced
+     * @return Boolean - true/false whether events are being held
+     */
+    public boolean isIdle() {
+        return held.isEmpty();
+    }
+
+
+    /**
+     * Counts a committed transaction once its batch is synced.  A full batch
+     * is synced right away.  A transaction that committed no write while no
+     * batch is waiting has nothing to wait for and is counted straight away
+     * @param T - transaction that ended
+     */
+    public void transactionCommitted(Transaction T) {
+        boolean readOnly = T.isReadOnly();
+        int operations = T.getOperationCount();
+        if (held.isEmpty()) {
+            metrics.commit(readOnly, operations);
+            return;
+        }
+
+        held.add(listener -> metrics.commit(readOnly, operations));
+        if (++transactions >= syncEvery) {
+            sync();
+        }
+    }
+
+
+    /**
+     * Syncs the batch if its first commit has waited long enough.  Called
+     * after every instruction
+     */
+    public void tick() {
+        if (!held.isEmpty() && clock.getAsInt() - oldest >= maxDelay) {
+            sync();
+        }
+    }
+
+
+    /**
+     * Forces every log with unsynced commits to disk, then passes on the
+     * events held for the batch in order
+     */
+    public void sync() {
+        if (held.isEmpty()) {
+            return;
+        }
+
+        for (Site site : sites) {
+            site.syncLog();
+        }
+        for (Consumer<EngineListener> event : held) {
+            event.accept(delegate);
+        }
+        held.clear();
+        transactions = 0;
+        batches++;
+    }
+
+
+    /**
+     * Gets the number of batches synced so far
+     * @return long - batch count
+     */
+    public long getBatchCount() {
+        return batches;
+    }
+
+
+    /**
+     * Passes an event on, or holds it while a batch is waiting
+     * @param event - event to pass on
+     */
+    private void report(Consumer<EngineListener> event) {
+        if (held.isEmpty()) {
+            event.accept(delegate);
+        } else {
+            held.add(event);
+        }
+    }
+
+
+    public void read(int transaction, int varId, int value) {
+        report(listener -> listener.read(transaction, varId, value));
+    }
+
+
+    /**
+     * A committed write is always held, starting a batch if none is waiting
+     */
+    public void committed(int transaction, int varId, int value, int siteId) {
+        if (held.isEmpty()) {
+            oldest = clock.getAsInt();
+        }
+        held.add(listener -> listener.committed(transaction, varId, value, siteId));
+    }
+
+
+    public void aborted(int transaction, AbortReason reason, int cause) {
+        report(listener -> listener.aborted(transaction, reason, cause));
+    }
+
+
+    public void restarted(int transaction, int retry) {
+        report(listener -> listener.restarted(transaction, retry));
+    }
+
+
+    public void dumped(Dump dump) {
+        report(listener -> listener.dumped(dump));
+    }
+
+
+    /**
+     * Syncs the batch waiting, if any, and flushes the listener
+     */
+    public void flush() {
+        sync();
+        delegate.flush();
+    }
+}
@@ -13,24 +13,89 @@ package adb_project;
 
 public class Instruction {
 
-    private String instruction;
-    private Integer id;
-    private Integer variable;
-    private Integer value;
+    // Opcodes - also the index into the Task Manager's handler table
+    public static final int BEGIN = 0;
+    public static final int BEGIN_RO = 1;
+    public static final int READ = 2;
+    public static final int WRITE = 3;
+    public static final int END = 4;
+    public static final int FAIL = 5;
+    public static final int RECOVER = 6;
+    public static final int DUMP = 7;
+    public static final int DUMP_VARIABLE = 8;
+    public static final int DUMP_SITE = 9;
+    public static final int OPCODE_COUNT = 10;
+
+    private static final String[] NAMES = {
+            "begin", "beginRO", "R", "W", "end", "fail", "recover", "dump", "dumpx", "dumpi"
+    };
+
+    private int opcode;
+    private int id;
+    private int variable;
+    private int value;
 
 
     /**
-     * Creates an Instruction object
+     * Creates an Instruction object.  Operands an instruction does not
+     * use are 0
+     * @param opcode - instruction type, one of the opcode constants
+     * @param id - transaction id, or site id for fail / recover
+     * @param variable - variable id
+     * @param value - value of variable, or the id to dump
+     */
+    public Instruction(int opcode, int id, int variable, int value) {
+        this.opcode = opcode;
+        this.id = id;
+        this.variable = variable;
+        this.value = value;
+    }
+
+
+    /**
+     * Creates an Instruction object from its string instruction type
      * @param instruction - string instruction type
      * @param id - transaction id
      * @param variable - variable id
      * @param value - value of variable
      */
     public Instruction(String instruction, Integer id, Integer variable, Integer value) {
-        this.instruction = instruction;
-        this.id = id;
-        this.variable = variable;
-        this.value = value;
+        this(toOpcode(instruction), (id == null) ? 0 : id, (variable == null) ? 0 : variable,
+                (value == null) ? 0 : value);
+    }
+
+
+    /**
+     * Looks up the opcode for a string instruction type
+     * @param instruction - string instruction type
+     * @return int - opcode
+     */
+    public static int toOpcode(String instruction) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equals(instruction)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown instruction: " + instruction);
+    }
+
+
+    /**
+     * Gets the string instruction type for an opcode
+     * @param opcode - opcode
+     * @return String - instruction type
+     */
+    public static String getName(int opcode) {
+        return NAMES[opcode];
+    }
+
+
+    /**
+     * Gets the instruction opcode
+     * @return int - opcode
+     */
+    public int getOpcode() {
+        return opcode;
     }
 
 
@@ -39,33 +104,33 @@ public class Instruction {
      * @return String - instruction type
      */
     public String getInstruction() {
-        return instruction;
+        return NAMES[opcode];
     }
 
 
     /**
      * Gets transaction ID
-     * @return Integer - transaction ID
+     * @return int - transaction ID
      */
-    public Integer getId() {
+    public int getId() {
         return id;
     }
 
 
     /**
      * Gets variable ID
-     * @return Integer - variable ID
+     * @return int - variable ID
      */
-    public Integer getVariable() {
+    public int getVariable() {
         return variable;
     }
 
 
     /**
      * Gets value of variable
-     * @return Integer - value of variable
+     * @return int - value of variable
      */
-    public Integer getValue() {
+    public int getValue() {
         return value;
     }
 
@@ -76,7 +141,7 @@ public class Instruction {
      */
     public String toString() {
         String result = "------\n";
-        result += "\ninstruction: " + this.instruction;
+        result += "\ninstruction: " + getInstruction();
         result += "\nid: " + this.id;
         result += "\nvariable: " + this.variable;
         result += "\nvalue: " + this.value;
@@ -0,0 +1,149 @@
+/**
+ * <h1>InstructionBuffer</h1>
+ * Packed in-memory trace of instructions.  Each field is kept in its own
+ * primitive array (a byte opcode and three ints) instead of one object
+ * per instruction, so long traces can be held for replay with a fraction
+ * of the heap.  Instruction objects are only created as they are replayed.
+ */
+
+
+package adb_project;
+
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+public class InstructionBuffer implements Iterable<Instruction> {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private byte[] opcodes;
+    private int[] ids;
+    private int[] variables;
+    private int[] values;
+    private int size;
+
+
+    /**
+     * Creates an empty buffer
+     */
+    public InstructionBuffer() {
+        this(INITIAL_CAPACITY);
+    }
+
+
+    /**
+     * Creates an empty buffer
+     * @param capacity - number of instructions to allocate room for
+     */
+    public InstructionBuffer(int capacity) {
+        capacity = Math.max(capacity, 1);
+        this.opcodes = new byte[capacity];
+        this.ids = new int[capacity];
+        this.variables = new int[capacity];
+        this.values = new int[capacity];
+        this.size = 0;
+    }
+
+
+    /**
+     * Reads every instruction from an iterator into a new buffer
+     * @param instructions - instruction iterator, e.g. Parser.mapInstructions
+     * @return InstructionBuffer - packed instructions
+     */
+    public static InstructionBuffer load(Iterator<Instruction> instructions) {
+        InstructionBuffer buffer = new InstructionBuffer();
+        while (instructions.hasNext()) {
+            buffer.add(instructions.next());
+        }
+        return buffer;
+    }
+
+
+    /**
+     * Appends an instruction
+     * @param instruction - instruction object
+     */
+    public void add(Instruction instruction) {
+        add(instruction.getOpcode(), instruction.getId(), instruction.getVariable(), instruction.getValue());
+    }
+
+
+    /**
+     * Appends an instruction from its fields
+     * @param opcode - instruction opcode
+     * @param id - transaction or site id
+     * @param variable - variable id
+     * @param value - value or dump id
+     */
+    public void add(int opcode, int id, int variable, int value) {
+        if (size == opcodes.length) {
+            int capacity = (size < Integer.MAX_VALUE / 2) ? size * 2 : Integer.MAX_VALUE - 8;
+            opcodes = Arrays.copyOf(opcodes, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            variables = Arrays.copyOf(variables, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        opcodes[size] = (byte) opcode;
+        ids[size] = id;
+        variables[size] = variable;
+        values[size] = value;
+        size++;
+    }
+
+
+    /**
+     * Number of instructions in the buffer
+     * @return int - size
+     */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * Gets the opcode of an instruction
+     * @param i - position in the buffer
+     * @return int - opcode
+     */
+    public int getOpcode(int i) {
+        return opcodes[i];
+    }
+
+
+    /**
+     * Creates the Instruction object for a position in the buffer
+     * @param i - position in the buffer
+     * @return Instruction - instruction object
+     */
+    public Instruction get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+        return new Instruction(opcodes[i], ids[i], variables[i], values[i]);
+    }
+
+
+    /**
+     * Iterates over the buffer creating each Instruction as it is reached
+     * @return Iterator - instruction iterator
+     */
+    public Iterator<Instruction> iterator() {
+        return new Iterator<Instruction>() {
+            private int position = 0;
+
+            public boolean hasNext() {
+                return position < size;
+            }
+
+            public Instruction next() {
+                if (position >= size) {
+                    throw new NoSuchElementException();
+                }
+                return get(position++);
+            }
+        };
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * <h1>InstructionHandler</h1>
+ * Entry in the Task Manager's dispatch table.  There is one handler
+ * per instruction opcode.
+ */
+
+package adb_project;
+
+
+public interface InstructionHandler {
+
+    /**
+     * Executes an instruction
+     * @param dm - data manager the instruction runs against
+     * @param instruction - instruction object
+     */
+    void handle(DM dm, Instruction instruction);
+}
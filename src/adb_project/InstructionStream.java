@@ -0,0 +1,85 @@
+/**
+ * <h1>InstructionStream</h1>
+ * Lazily parses instructions from an input file one line at a time so
+ * the Task Manager can execute them as they are read instead of loading
+ * the whole file first.
+ */
+
+
+package adb_project;
+
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+public class InstructionStream implements Iterator<Instruction>, Closeable {
+
+    private Parser parser;
+    private BufferedReader br;
+    private Instruction next;
+
+
+    /**
+     * Opens an input file for streaming
+     * @param parser - parser used to turn each line into an Instruction
+     * @param path - path to file with instructions on each line
+     */
+    public InstructionStream(Parser parser, String path) throws IOException {
+        this.parser = parser;
+        this.br = new BufferedReader(new FileReader(path));
+        this.next = null;
+    }
+
+
+    /**
+     * Checks whether there is another instruction.  Reads ahead one line
+     * if needed and skips blank lines
+     * @return Boolean - true/false whether there is another instruction
+     */
+    public boolean hasNext() {
+        if(next != null) {
+            return true;
+        }
+
+        try {
+            String line;
+            while((line = br.readLine()) != null) {
+                if(!line.trim().isEmpty()) {
+                    next = parser.parseLine(line);
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return false;
+    }
+
+
+    /**
+     * Gets the next instruction
+     * @return Instruction - the next instruction in the file
+     */
+    public Instruction next() {
+        if(!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Instruction instruction = next;
+        next = null;
+        return instruction;
+    }
+
+
+    /**
+     * Closes the input file
+     */
+    public void close() throws IOException {
+        br.close();
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * <h1>IntMap</h1>
+ * Map from int keys to objects backed by two parallel arrays with open
+ * addressing (linear probing).  Keys are never boxed and memory grows
+ * with the number of entries, not with the largest key, so a site only
+ * pays for the variables it has actually used.
+ */
+
+package adb_project;
+
+
+import java.util.Arrays;
+
+
+public class IntMap<V> {
+
+    private static final int EMPTY = 0;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+
+
+    /**
+     * Creates an empty map.  Key 0 is reserved to mark empty slots, which is
+     * fine since transaction, site and variable IDs all start at 1
+     */
+    public IntMap() {
+        this.keys = new int[INITIAL_CAPACITY];
+        this.values = new Object[INITIAL_CAPACITY];
+        this.size = 0;
+        this.mask = INITIAL_CAPACITY - 1;
+    }
+
+
+    /**
+     * Gets the value for a key
+     * @param key - int key, not 0
+     * @return V - value or null if the key is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return (V) values[i];
+            }
+            if (keys[i] == EMPTY) {
+                return null;
+            }
+        }
+    }
+
+
+    /**
+     * Puts a value for a key
+     * @param key - int key, not 0
+     * @param value - value, not null
+     */
+    public void put(int key, V value) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Key 0 is reserved");
+        }
+
+        int i = slot(key);
+        while (keys[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+
+        if (keys[i] == EMPTY) {
+            keys[i] = key;
+            size++;
+        }
+        values[i] = value;
+
+        if (size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+    }
+
+
+    /**
+     * Removes a key.  Later entries of the probe run are shifted back so
+     * lookups never need tombstones
+     * @param key - int key
+     * @return V - removed value or null if the key was not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int i = slot(key);
+        while (keys[i] != key) {
+            if (keys[i] == EMPTY) {
+                return null;
+            }
+            i = (i + 1) & mask;
+        }
+
+        V removed = (V) values[i];
+        size--;
+
+        int gap = i;
+        for (int j = (gap + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            // Move the entry back if the gap is between its home slot and where it is
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = EMPTY;
+        values[gap] = null;
+        return removed;
+    }
+
+
+    /**
+     * Number of entries in the map
+     * @return int - size
+     */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * Removes every entry
+     */
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+
+    /**
+     * Gets the keys in the map in ascending order
+     * @return int[] - sorted keys
+     */
+    public int[] sortedKeys() {
+        int[] result = new int[size];
+        int n = 0;
+        for (int key : keys) {
+            if (key != EMPTY) {
+                result[n++] = key;
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+
+    /**
+     * Home slot of a key.  Keys are mixed first since IDs are sequential
+     * @param key - int key
+     * @return int - slot index
+     */
+    private int slot(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+
+    /**
+     * Rehashes into larger arrays
+     * @param capacity - new capacity, a power of two
+     */
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int j = slot(oldKeys[i]);
+                while (keys[j] != EMPTY) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/**
+ * <h1>IntSet</h1>
+ * Set of ints kept in insertion order in a primitive array.  Small sets,
+ * the handful of variables a transaction usually touches, are searched
+ * with a linear scan, which is cheaper than hashing boxed Integers.  Once
+ * a set grows past SCAN_LIMIT values it also keeps an open addressing
+ * index from value to position, so add, remove and removeFirst stay
+ * constant time however many variables a transaction locks.
+ * <p>
+ * Removed values leave a hole that removeFirst skips and the next
+ * compaction closes.  0 marks a hole, which is fine since transaction,
+ * site and variable IDs all start at 1.
+ */
+
+package adb_project;
+
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+
+public class IntSet {
+
+    private static final int EMPTY = 0;
+    private static final int INITIAL_CAPACITY = 4;
+    private static final int SCAN_LIMIT = 8;
+
+    private int[] values;
+    private int head;
+    private int end;
+    private int size;
+    private int[] indexKeys;
+    private int[] indexPositions;
+    private int mask;
+
+
+    /**
+     * Creates an empty set
+     *
+     * <ul>
+     *      <li>values - values in insertion order between head and end, holes are EMPTY</li>
+     *      <li>indexKeys / indexPositions - value to position in values, null until the
+     *          set grows past SCAN_LIMIT</li>
+     * </ul>
+     */
+    public IntSet() {
+        this.values = new int[INITIAL_CAPACITY];
+        this.head = 0;
+        this.end = 0;
+        this.size = 0;
+    }
+
+
+    /**
+     * Adds a value to the end of the set if it is not already there
+     * @param value - int value, not 0
+     * @return Boolean - true if the value was added
+     */
+    public boolean add(int value) {
+        if (value == EMPTY) {
+            throw new IllegalArgumentException("Value 0 is reserved");
+        }
+        if (contains(value)) {
+            return false;
+        }
+        if (end == values.length) {
+            compact();
+        }
+
+        values[end++] = value;
+        size++;
+        if (indexKeys != null) {
+            index(value, end - 1);
+        } else if (size > SCAN_LIMIT) {
+            reindex();
+        }
+        return true;
+    }
+
+
+    /**
+     * Removes a value, keeping the order of the others
+     * @param value - int value
+     * @return Boolean - true if the value was removed
+     */
+    public boolean remove(int value) {
+        int position = indexOf(value);
+        if (position < 0) {
+            return false;
+        }
+        values[position] = EMPTY;
+        unindex(value);
+        removed();
+        return true;
+    }
+
+
+    /**
+     * Removes and returns the value that was added first
+     * @return int - first value
+     */
+    public int removeFirst() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        while (values[head] == EMPTY) {
+            head++;
+        }
+        int first = values[head];
+        values[head++] = EMPTY;
+        unindex(first);
+        removed();
+        return first;
+    }
+
+
+    /**
+     * Checks whether a value is in the set
+     * @param value - int value
+     * @return Boolean - true/false if the value is in the set
+     */
+    public boolean contains(int value) {
+        return indexOf(value) >= 0;
+    }
+
+
+    /**
+     * Number of values in the set
+     * @return int - size
+     */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * Checks whether the set is empty
+     * @return Boolean - true/false if empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+
+    /**
+     * Removes every value
+     */
+    public void clear() {
+        Arrays.fill(values, head, end, EMPTY);
+        head = 0;
+        end = 0;
+        size = 0;
+        indexKeys = null;
+        indexPositions = null;
+    }
+
+
+    /**
+     * Bookkeeping after a value was removed.  An empty set starts over at
+     * the front of the array, which only holds holes by then
+     */
+    private void removed() {
+        size--;
+        if (size == 0) {
+            head = 0;
+            end = 0;
+        }
+    }
+
+
+    /**
+     * Position of a value in the values array
+     * @param value - int value
+     * @return int - position or -1 if not in the set
+     */
+    private int indexOf(int value) {
+        if (value == EMPTY) {
+            return -1;
+        }
+        if (indexKeys == null) {
+            for (int i = head; i < end; i++) {
+                if (values[i] == value) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        for (int i = slot(value); indexKeys[i] != EMPTY; i = (i + 1) & mask) {
+            if (indexKeys[i] == value) {
+                return indexPositions[i];
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Closes the holes left by removed values, growing the array if it is
+     * more than half full, and rebuilds the index for the new positions
+     */
+    private void compact() {
+        int[] target = (size * 2 > values.length) ? new int[values.length * 2] : values;
+        int n = 0;
+        for (int i = head; i < end; i++) {
+            if (values[i] != EMPTY) {
+                target[n++] = values[i];
+            }
+        }
+        if (target == values) {
+            Arrays.fill(values, n, end, EMPTY);
+        }
+
+        values = target;
+        head = 0;
+        end = n;
+        if (indexKeys != null) {
+            reindex();
+        }
+    }
+
+
+    /**
+     * Builds the index over every value.  It has twice as many slots as the
+     * values array has positions, so it is never more than half full
+     */
+    private void reindex() {
+        int capacity = values.length * 2;
+        indexKeys = new int[capacity];
+        indexPositions = new int[capacity];
+        mask = capacity - 1;
+        for (int i = head; i < end; i++) {
+            if (values[i] != EMPTY) {
+                index(values[i], i);
+            }
+        }
+    }
+
+
+    /**
+     * Adds a value to the index
+     * @param value - int value
+     * @param position - position in the values array
+     */
+    private void index(int value, int position) {
+        int i = slot(value);
+        while (indexKeys[i] != EMPTY) {
+            i = (i + 1) & mask;
+        }
+        indexKeys[i] = value;
+        indexPositions[i] = position;
+    }
+
+
+    /**
+     * Removes a value from the index if there is one.  Later entries of the
+     * probe run are shifted back so lookups never need tombstones
+     * @param value - int value in the index
+     */
+    private void unindex(int value) {
+        if (indexKeys == null) {
+            return;
+        }
+
+        int gap = slot(value);
+        while (indexKeys[gap] != value) {
+            gap = (gap + 1) & mask;
+        }
+        for (int j = (gap + 1) & mask; indexKeys[j] != EMPTY; j = (j + 1) & mask) {
+            int home = slot(indexKeys[j]);
+            // Move the entry back if the gap is between its home slot and where it is
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                indexKeys[gap] = indexKeys[j];
+                indexPositions[gap] = indexPositions[j];
+                gap = j;
+            }
+        }
+        indexKeys[gap] = EMPTY;
+    }
+
+
+    /**
+     * Home slot of a value in the index.  Values are mixed first since IDs
+     * are sequential
+     * @param value - int value
+     * @return int - slot index
+     */
+    private int slot(int value) {
+        int h = value * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
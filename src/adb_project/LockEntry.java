@@ -0,0 +1,195 @@
+/**
+ * <h1>LockEntry</h1>
+ * Lock state of one variable at one site.  Holds the shared holders
+ * and the exclusive owner along with the write instruction it will
+ * commit, so conflict checks never have to scan the holders.
+ */
+
+package adb_project;
+
+
+import java.util.HashSet;
+import java.util.Set;
+
+
+public class LockEntry {
+
+    private Transaction owner;
+    private Instruction ownerInstruction;
+    private HashSet<Transaction> sharedHolders;
+
+
+    /**
+     * Creates an unlocked entry.  The shared holder set is only
+     * allocated the first time a read lock is granted
+     */
+    public LockEntry() {
+        this.owner = null;
+        this.ownerInstruction = null;
+        this.sharedHolders = null;
+    }
+
+
+    /**
+     * Gets the number of read locks held on the variable
+     * @return int - shared holder count
+     */
+    public int getSharedCount() {
+        return (sharedHolders == null) ? 0 : sharedHolders.size();
+    }
+
+
+    /**
+     * Gets the transaction holding the write lock
+     * @return Transaction - exclusive owner or null
+     */
+    public Transaction getOwner() {
+        return owner;
+    }
+
+
+    /**
+     * Gets the write instruction of the exclusive owner
+     * @return Instruction - write instruction or null
+     */
+    public Instruction getOwnerInstruction() {
+        return ownerInstruction;
+    }
+
+
+    /**
+     * Count of transactions holding a lock on the variable
+     * @return int - lock count
+     */
+    public int getLockCount() {
+        return getSharedCount() + ((owner != null) ? 1 : 0);
+    }
+
+
+    /**
+     * Checks whether any lock is held
+     * @return Boolean - true/false if locked
+     */
+    public boolean isLocked() {
+        return owner != null || getSharedCount() > 0;
+    }
+
+
+    /**
+     * Checks whether a write lock is held
+     * @return Boolean - true/false if write locked
+     */
+    public boolean isWriteLocked() {
+        return owner != null;
+    }
+
+
+    /**
+     * Checks whether a transaction holds any lock on the variable
+     * @param T - transaction object
+     * @return Boolean - true/false if held
+     */
+    public boolean holds(Transaction T) {
+        return owner == T || (sharedHolders != null && sharedHolders.contains(T));
+    }
+
+
+    /**
+     * A read lock can be granted as long as nobody else holds the write lock
+     * @param T - transaction object
+     * @return Boolean - true/false if a read lock can be granted
+     */
+    public boolean canLockShared(Transaction T) {
+        return owner == null || owner == T;
+    }
+
+
+    /**
+     * A write lock can be granted if the variable is unlocked or the transaction
+     * is the only holder, in which case its lock is upgraded in place
+     * @param T - transaction object
+     * @return Boolean - true/false if a write lock can be granted
+     */
+    public boolean canLockExclusive(Transaction T) {
+        if(owner != null) {
+            return owner == T;
+        }
+        int shared = getSharedCount();
+        return shared == 0 || (shared == 1 && sharedHolders.contains(T));
+    }
+
+
+    /**
+     * Grants a read lock
+     * @param T - transaction object
+     * @return Boolean - true if this is a new lock for the transaction
+     */
+    public boolean lockShared(Transaction T) {
+        if(owner == T) {
+            return false;
+        }
+        if(sharedHolders == null) {
+            sharedHolders = new HashSet<>();
+        }
+        return sharedHolders.add(T);
+    }
+
+
+    /**
+     * Grants a write lock.  A transaction that already holds the read lock is
+     * upgraded in place and an owner writing again replaces its instruction
+     * @param T - transaction object
+     * @param instruction - write instruction
+     * @return Boolean - true if this is a new lock for the transaction
+     */
+    public boolean lockExclusive(Transaction T, Instruction instruction) {
+        boolean held = holds(T);
+        if(sharedHolders != null) {
+            sharedHolders.remove(T);
+        }
+        owner = T;
+        ownerInstruction = instruction;
+        return !held;
+    }
+
+
+    /**
+     * Releases whatever lock the transaction holds
+     * @param T - transaction object
+     * @return Boolean - true if a lock was released
+     */
+    public boolean release(Transaction T) {
+        if(owner == T) {
+            owner = null;
+            ownerInstruction = null;
+            return true;
+        }
+        return sharedHolders != null && sharedHolders.remove(T);
+    }
+
+
+    /**
+     * Adds every holder of the variable to a set
+     * @param holders - set being filled
+     */
+    public void addHolders(Set<Transaction> holders) {
+        if(owner != null) {
+            holders.add(owner);
+        }
+        if(sharedHolders != null) {
+            holders.addAll(sharedHolders);
+        }
+    }
+
+
+    /**
+     * Drops every lock on the variable
+     */
+    public void clear() {
+        owner = null;
+        ownerInstruction = null;
+        if(sharedHolders != null) {
+            sharedHolders.clear();
+        }
+    }
+}
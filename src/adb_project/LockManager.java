@@ -0,0 +1,157 @@
+/**
+ * <h1>LockManager</h1>
+ * Lock table for a site.  Each variable has a LockEntry with its shared
+ * holders and exclusive owner, keyed by variable ID.  Entries only exist
+ * while a variable is locked, so the table grows with the locks held and
+ * not with the number of variables.  Each transaction has a set of the
+ * variables it holds so its locks can be released without scanning the
+ * whole table.
+ */
+
+package adb_project;
+
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+
+public class LockManager {
+
+    private IntMap<LockEntry> entries;
+    private HashMap<Transaction, IntSet> heldBy;
+
+
+    /**
+     * Creates an empty lock manager
+     */
+    public LockManager() {
+        this.entries = new IntMap<>();
+        this.heldBy = new HashMap<>();
+    }
+
+
+    /**
+     * Gets the lock entry for a variable
+     * @param varId - variable ID
+     * @return LockEntry - lock entry or null if the variable is not locked
+     */
+    public LockEntry getEntry(int varId) {
+        return entries.get(varId);
+    }
+
+
+    /**
+     * Gets the lock entry for a variable, creating it if needed
+     * @param varId - variable ID
+     * @return LockEntry - lock entry
+     */
+    private LockEntry getOrCreateEntry(int varId) {
+        LockEntry entry = entries.get(varId);
+        if(entry == null) {
+            entry = new LockEntry();
+            entries.put(varId, entry);
+        }
+        return entry;
+    }
+
+
+    /**
+     * Grants a read or write lock depending on the instruction type
+     * @param T - transaction object
+     * @param varId - variable ID
+     * @param instruction - instruction object
+     * @return Boolean - true if this is a new lock for the transaction
+     */
+    public boolean lock(Transaction T, int varId, Instruction instruction) {
+        LockEntry entry = getOrCreateEntry(varId);
+        boolean acquired;
+
+        if(instruction.getOpcode() == Instruction.WRITE) {
+            acquired = entry.lockExclusive(T, instruction);
+        } else {
+            acquired = entry.lockShared(T);
+        }
+
+        if(acquired) {
+            heldBy.computeIfAbsent(T, k -> new IntSet()).add(varId);
+        }
+        return acquired;
+    }
+
+
+    /**
+     * Releases a transaction's lock on a variable
+     * @param T - transaction object
+     * @param varId - variable ID
+     * @return Boolean - true if a lock was released
+     */
+    public boolean release(Transaction T, int varId) {
+        LockEntry entry = getEntry(varId);
+        if(entry == null || !entry.release(T)) {
+            return false;
+        }
+        if(!entry.isLocked()) {
+            entries.remove(varId);
+        }
+
+        IntSet held = heldBy.get(T);
+        if(held != null) {
+            held.remove(varId);
+            if(held.isEmpty())
+                heldBy.remove(T);
+        }
+        return true;
+    }
+
+
+    /**
+     * Releases all of a transaction's locks
+     * @param T - transaction object
+     * @return int - number of locks released
+     */
+    public int releaseAll(Transaction T) {
+        IntSet held = heldBy.remove(T);
+        if(held == null) {
+            return 0;
+        }
+
+        int released = held.size();
+        while(!held.isEmpty()) {
+            int varId = held.removeFirst();
+            LockEntry entry = getEntry(varId);
+            entry.release(T);
+            if(!entry.isLocked()) {
+                entries.remove(varId);
+            }
+        }
+        return released;
+    }
+
+
+    /**
+     * Gets the number of variables locked in the table
+     * @return int - locked variable count
+     */
+    public int getLockedVariableCount() {
+        return entries.size();
+    }
+
+
+    /**
+     * Gets the transactions that hold any lock in the table
+     * @return Set - transactions holding locks
+     */
+    public Set<Transaction> getLockedTransactions() {
+        return new HashSet<>(heldBy.keySet());
+    }
+
+
+    /**
+     * Drops every lock in the table
+     */
+    public void clear() {
+        entries.clear();
+        heldBy.clear();
+    }
+}
@@ -0,0 +1,275 @@
+/**
+ * <h1>MappedInstructionStream</h1>
+ * Parses instructions straight from a memory mapped input file.  Lines
+ * are scanned byte by byte, instruction names are matched without
+ * building Strings and numbers are accumulated as they are read, so the
+ * only object created per line is the Instruction itself.
+ */
+
+
+package adb_project;
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+public class MappedInstructionStream implements Iterator<Instruction>, Closeable {
+
+    private static final int MAX_FIELDS = 3;
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private FileChannel channel;
+    private long fileSize;
+    private long windowStart;
+    private MappedByteBuffer buffer;
+    private int pos;
+
+    private int[] fields;
+    private boolean[] hasDigits;
+    private byte[] firstByte;
+    private Instruction next;
+
+
+    /**
+     * Opens and maps an input file.  Large files are mapped one window at a
+     * time and a window is moved forward whenever a line runs past its end
+     * @param path - path to file with instructions on each line
+     */
+    public MappedInstructionStream(String path) throws IOException {
+        this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        this.fields = new int[MAX_FIELDS];
+        this.hasDigits = new boolean[MAX_FIELDS];
+        this.firstByte = new byte[MAX_FIELDS];
+        this.next = null;
+        map(0);
+    }
+
+
+    /**
+     * Maps the window of the file starting at an offset
+     * @param start - file offset of the window
+     */
+    private void map(long start) throws IOException {
+        windowStart = start;
+        long size = Math.min(WINDOW_SIZE, fileSize - start);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        pos = 0;
+    }
+
+
+    /**
+     * Checks whether there is another instruction.  Blank lines are skipped
+     * @return Boolean - true/false whether there is another instruction
+     */
+    public boolean hasNext() {
+        try {
+            while(next == null) {
+                int end = findLineEnd();
+                if(end < 0) {
+                    return false;
+                }
+                next = parseLine(pos, end);
+                pos = end + 1;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+
+    /**
+     * Gets the next instruction
+     * @return Instruction - the next instruction in the file
+     */
+    public Instruction next() {
+        if(!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Instruction instruction = next;
+        next = null;
+        return instruction;
+    }
+
+
+    /**
+     * Finds the end of the current line, moving the window forward if the
+     * line is cut off by the end of the mapping
+     * @return int - index of the line end in the buffer or -1 at end of file
+     */
+    private int findLineEnd() throws IOException {
+        while(true) {
+            int limit = buffer.limit();
+            if(pos >= limit && windowStart + limit >= fileSize) {
+                return -1;
+            }
+
+            for(int i = pos; i < limit; i++) {
+                if(buffer.get(i) == '\n') {
+                    return i;
+                }
+            }
+
+            if(windowStart + limit >= fileSize) {
+                // Last line without a trailing newline
+                return limit;
+            }
+
+            if(pos == 0) {
+                throw new IOException("Line longer than " + WINDOW_SIZE + " bytes at offset " + windowStart);
+            }
+            map(windowStart + pos);
+        }
+    }
+
+
+    /**
+     * Parses the bytes of one line into an Instruction.  Fields are separated
+     * by '(' ',' and ')' and keep only their digits like Parser does
+     * @param start - index of the first byte of the line
+     * @param end - index one past the last byte of the line
+     * @return Instruction - instruction object or null for a blank line
+     */
+    private Instruction parseLine(int start, int end) {
+        int i = start;
+        while(i < end && isSpace(buffer.get(i))) {
+            i++;
+        }
+        if(i == end) {
+            return null;
+        }
+
+        // Instruction name
+        int nameStart = i;
+        while(i < end && buffer.get(i) != '(' && !isSpace(buffer.get(i))) {
+            i++;
+        }
+        int nameEnd = i;
+
+        // Numeric fields
+        int count = 0;
+        boolean negative = false;
+        for(int f = 0; f < MAX_FIELDS; f++) {
+            fields[f] = 0;
+            hasDigits[f] = false;
+            firstByte[f] = 0;
+        }
+
+        for(; i < end; i++) {
+            byte b = buffer.get(i);
+            if(b == '(' || b == ',') {
+                if(count > 0 && negative) {
+                    fields[count - 1] = -fields[count - 1];
+                }
+                negative = false;
+                if(count == MAX_FIELDS) {
+                    break;
+                }
+                count++;
+            } else if(b == ')') {
+                break;
+            } else if(count > 0 && !isSpace(b)) {
+                int f = count - 1;
+                if(firstByte[f] == 0) {
+                    firstByte[f] = b;
+                    if(b == '-') {
+                        negative = true;
+                    }
+                }
+                if(b >= '0' && b <= '9') {
+                    fields[f] = fields[f] * 10 + (b - '0');
+                    hasDigits[f] = true;
+                }
+            }
+        }
+        if(count > 0 && negative) {
+            fields[count - 1] = -fields[count - 1];
+        }
+
+        return toInstruction(nameStart, nameEnd - nameStart);
+    }
+
+
+    /**
+     * Builds an Instruction from the scanned name and fields
+     * @param nameStart - index of the instruction name
+     * @param length - length of the instruction name
+     * @return Instruction - instruction object
+     */
+    private Instruction toInstruction(int nameStart, int length) {
+        byte first = buffer.get(nameStart);
+
+        if(length == 1 && first == 'R') {
+            return new Instruction(Instruction.READ, fields[0], fields[1], 0);
+        } else if(length == 1 && first == 'W') {
+            return new Instruction(Instruction.WRITE, fields[0], fields[1], fields[2]);
+        } else if(nameEquals(nameStart, length, "dump")) {
+            if(!hasDigits[0]) {
+                return new Instruction(Instruction.DUMP, 0, 0, 0);
+            } else if(firstByte[0] == 'x') {
+                return new Instruction(Instruction.DUMP_VARIABLE, 0, 0, fields[0]);
+            } else {
+                return new Instruction(Instruction.DUMP_SITE, 0, 0, fields[0]);
+            }
+        } else if(nameEquals(nameStart, length, "beginRO")) {
+            return new Instruction(Instruction.BEGIN_RO, fields[0], 0, 0);
+        } else if(nameEquals(nameStart, length, "begin")) {
+            return new Instruction(Instruction.BEGIN, fields[0], 0, 0);
+        } else if(nameEquals(nameStart, length, "end")) {
+            return new Instruction(Instruction.END, fields[0], 0, 0);
+        } else if(nameEquals(nameStart, length, "fail")) {
+            return new Instruction(Instruction.FAIL, fields[0], 0, 0);
+        } else if(nameEquals(nameStart, length, "recover")) {
+            return new Instruction(Instruction.RECOVER, fields[0], 0, 0);
+        }
+
+        throw new IllegalArgumentException("Unknown instruction at offset " + (windowStart + nameStart));
+    }
+
+
+    /**
+     * Compares the bytes of the instruction name with a keyword
+     * @param start - index of the instruction name
+     * @param length - length of the instruction name
+     * @param keyword - keyword to match
+     * @return Boolean - true/false whether they are equal
+     */
+    private boolean nameEquals(int start, int length, String keyword) {
+        if(length != keyword.length()) {
+            return false;
+        }
+        for(int i = 0; i < length; i++) {
+            if(buffer.get(start + i) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Whitespace check that also covers the carriage return of CRLF files
+     * @param b - byte
+     * @return Boolean - true/false whether the byte is whitespace
+     */
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+
+    /**
+     * Closes the input file
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+}
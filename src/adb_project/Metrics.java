@@ -0,0 +1,375 @@
+/**
+ * <h1>Metrics</h1>
+ * Registry of named counters and gauges.  Counters are striped
+ * (LongAdder) so threads updating the same counter never contend on one
+ * cache line, and the stripes are only added up when the metrics are
+ * read.  Gauges are either up/down counters or computed when read.
+ * <p>
+ * The registry can be written out in the Prometheus text format and
+ * registered with the platform MBean server, where every metric shows
+ * up as a read-only attribute.
+ */
+
+package adb_project;
+
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+
+public class Metrics {
+
+    private static final String COUNTER = "counter";
+    private static final String GAUGE = "gauge";
+
+    private String prefix;
+    private LinkedHashMap<String, Family> families;
+    private ObjectName objectName;
+
+
+    /**
+     * Counter added to by many threads.  Also used as a gauge that goes
+     * up and down
+     */
+    public static final class Counter {
+
+        private final LongAdder adder = new LongAdder();
+
+
+        /**
+         * Adds one
+         */
+        public void increment() {
+            adder.increment();
+        }
+
+
+        /**
+         * Takes one away
+         */
+        public void decrement() {
+            adder.decrement();
+        }
+
+
+        /**
+         * Adds an amount
+         * @param n - amount, negative to take away
+         */
+        public void add(long n) {
+            adder.add(n);
+        }
+
+
+        /**
+         * Gets the current total
+         * @return long - total
+         */
+        public long get() {
+            return adder.sum();
+        }
+    }
+
+
+    /**
+     * Metrics sharing a name and told apart by their labels
+     */
+    private static final class Family {
+
+        private String name;
+        private String type;
+        private String help;
+        private ArrayList<Sample> samples = new ArrayList<>();
+
+
+        private Family(String name, String type, String help) {
+            this.name = name;
+            this.type = type;
+            this.help = help;
+        }
+    }
+
+
+    /**
+     * One metric - labels in the Prometheus format, e.g. type="R", and
+     * where its value comes from
+     */
+    private static final class Sample {
+
+        private String labels;
+        private String attribute;
+        private Counter counter;
+        private DoubleSupplier value;
+
+
+        private Sample(String labels, String attribute, Counter counter, DoubleSupplier value) {
+            this.labels = labels;
+            this.attribute = attribute;
+            this.counter = counter;
+            this.value = value;
+        }
+
+
+        private boolean isWhole() {
+            return counter != null;
+        }
+
+
+        private double read() {
+            return (counter != null) ? counter.get() : value.getAsDouble();
+        }
+    }
+
+
+    /**
+     * Creates an empty registry
+     * @param prefix - put in front of every metric name, e.g. adb_
+     */
+    public Metrics(String prefix) {
+        this.prefix = prefix;
+        this.families = new LinkedHashMap<>();
+    }
+
+
+    /**
+     * Registers a counter that only goes up
+     * @param name - metric name without the prefix
+     * @param help - one line description
+     * @param labels - label names and values in pairs, e.g. "type", "R"
+     * @return Counter - counter to add to
+     */
+    public Counter counter(String name, String help, String... labels) {
+        Counter counter = new Counter();
+        register(name, COUNTER, help, labels, counter, null);
+        return counter;
+    }
+
+
+    /**
+     * Registers a counter worked out when the metrics are read, for totals
+     * something else already keeps.  The supplier is called from the reading
+     * thread, so it may see values a little out of date
+     * @param name - metric name without the prefix
+     * @param help - one line description
+     * @param value - current total
+     * @param labels - label names and values in pairs
+     */
+    public void counter(String name, String help, DoubleSupplier value, String... labels) {
+        register(name, COUNTER, help, labels, null, value);
+    }
+
+
+    /**
+     * Registers a gauge kept as a counter that goes up and down
+     * @param name - metric name without the prefix
+     * @param help - one line description
+     * @param labels - label names and values in pairs
+     * @return Counter - gauge to add to and take away from
+     */
+    public Counter gauge(String name, String help, String... labels) {
+        Counter counter = new Counter();
+        register(name, GAUGE, help, labels, counter, null);
+        return counter;
+    }
+
+
+    /**
+     * Registers a gauge worked out when the metrics are read.  The supplier is
+     * called from the reading thread, so it may see values a little out of date
+     * @param name - metric name without the prefix
+     * @param help - one line description
+     * @param value - current value
+     * @param labels - label names and values in pairs
+     */
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        register(name, GAUGE, help, labels, null, value);
+    }
+
+
+    /**
+     * Adds a metric to its family
+     * @param name - metric name without the prefix
+     * @param type - counter or gauge
+     * @param help - one line description
+     * @param labels - label names and values in pairs
+     * @param counter - counter holding the value, null if value is used
+     * @param value - computed value, null if counter is used
+     */
+    private synchronized void register(String name, String type, String help, String[] labels,
+                                       Counter counter, DoubleSupplier value) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name / value pairs: " + name);
+        }
+
+        String fullName = prefix + name;
+        Family family = families.computeIfAbsent(fullName, k -> new Family(k, type, help));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException(fullName + " is already registered as a " + family.type);
+        }
+
+        StringBuilder text = new StringBuilder();
+        StringBuilder attribute = new StringBuilder(fullName);
+        for (int i = 0; i < labels.length; i += 2) {
+            text.append((i == 0) ? "" : ",").append(labels[i]).append("=\"").append(labels[i + 1]).append('"');
+            attribute.append('.').append(labels[i + 1]);
+        }
+        family.samples.add(new Sample(text.toString(), attribute.toString(), counter, value));
+    }
+
+
+    /**
+     * Writes every metric in the Prometheus text format
+     * @param out - where the text goes
+     */
+    public synchronized void writePrometheus(Appendable out) throws IOException {
+        for (Family family : families.values()) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            for (Sample sample : family.samples) {
+                out.append(family.name);
+                if (!sample.labels.isEmpty()) {
+                    out.append('{').append(sample.labels).append('}');
+                }
+                out.append(' ').append(format(sample)).append('\n');
+            }
+        }
+    }
+
+
+    /**
+     * Formats a value, whole numbers without a fraction
+     * @param sample - metric
+     * @return String - value
+     */
+    private static String format(Sample sample) {
+        double value = sample.read();
+        if (sample.isWhole() || (value == Math.rint(value) && !Double.isInfinite(value))) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+
+    /**
+     * Registers the metrics with the platform MBean server as
+     * adb_project:type=Metrics,name=&lt;name&gt;.  Each metric is an attribute named
+     * after it with its label values appended, e.g. adb_operations_total.R
+     * @param name - name telling this registry apart from others in the JVM
+     */
+    public synchronized void registerMBean(String name) throws JMException {
+        if (objectName != null) {
+            return;
+        }
+        ObjectName objectName = new ObjectName("adb_project:type=Metrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MBean(), objectName);
+        this.objectName = objectName;
+    }
+
+
+    /**
+     * Takes the metrics off the platform MBean server if they were registered
+     */
+    public synchronized void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            // Already gone
+        }
+        objectName = null;
+    }
+
+
+    /**
+     * Finds a metric by its MBean attribute name
+     * @param attribute - attribute name
+     * @return Sample - metric or null if there is none
+     */
+    private synchronized Sample find(String attribute) {
+        for (Family family : families.values()) {
+            for (Sample sample : family.samples) {
+                if (sample.attribute.equals(attribute)) {
+                    return sample;
+                }
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Read-only view of the registry for JMX.  Counters are Longs and
+     * computed gauges are Doubles
+     */
+    private final class MBean implements DynamicMBean {
+
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Sample sample = find(attribute);
+            if (sample == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return sample.isWhole() ? (Object) sample.counter.get() : (Object) sample.value.getAsDouble();
+        }
+
+
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    // Left out, as the interface asks
+                }
+            }
+            return list;
+        }
+
+
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+
+        public Object invoke(String action, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException(action);
+        }
+
+
+        public MBeanInfo getMBeanInfo() {
+            ArrayList<MBeanAttributeInfo> attributes = new ArrayList<>();
+            synchronized (Metrics.this) {
+                for (Family family : families.values()) {
+                    for (Sample sample : family.samples) {
+                        String type = sample.isWhole() ? Long.class.getName() : Double.class.getName();
+                        attributes.add(new MBeanAttributeInfo(sample.attribute, type, family.help,
+                                true, false, false));
+                    }
+                }
+            }
+            return new MBeanInfo(Metrics.class.getName(), "Engine metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
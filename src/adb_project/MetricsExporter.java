@@ -0,0 +1,94 @@
+/**
+ * <h1>MetricsExporter</h1>
+ * Background thread that writes a metrics registry to a file in the
+ * Prometheus text format at a fixed period, e.g. for a node exporter
+ * textfile collector.  Each dump goes to a temporary file that is then
+ * renamed over the last one, so a reader never sees half a dump.
+ */
+
+package adb_project;
+
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+public class MetricsExporter implements Closeable {
+
+    private Metrics metrics;
+    private Path file;
+    private ScheduledExecutorService executor;
+    private volatile IOException error;
+
+
+    /**
+     * Starts writing the metrics to a file
+     * @param metrics - registry to write
+     * @param file - file the metrics are written to
+     * @param periodMillis - time between dumps in milliseconds
+     */
+    public MetricsExporter(Metrics metrics, Path file, long periodMillis) {
+        if (periodMillis < 1) {
+            throw new IllegalArgumentException("periodMillis must be at least 1");
+        }
+
+        this.metrics = metrics;
+        this.file = file;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-exporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(() -> {
+            try {
+                write();
+            } catch (IOException e) {
+                error = e;
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * Writes the metrics out now
+     */
+    public void write() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Path temp = parent.resolve(file.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            metrics.writePrometheus(out);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+
+    /**
+     * Stops the thread and writes one last dump so the file ends with the final
+     * values.  A failed periodic dump is rethrown here if the last one fails too
+     */
+    public void close() throws IOException {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            write();
+        } catch (IOException e) {
+            if (error != null) {
+                e.addSuppressed(error);
+            }
+            throw e;
+        }
+    }
+}
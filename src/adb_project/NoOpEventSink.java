@@ -0,0 +1,37 @@
+/**
+ * <h1>NoOpEventSink</h1>
+ * Listener that ignores every event.  Used by benchmarks so only the
+ * engine is measured and not the cost of its output.
+ */
+
+package adb_project;
+
+
+public class NoOpEventSink implements EngineListener {
+
+    public static final NoOpEventSink INSTANCE = new NoOpEventSink();
+
+
+    public void read(int transaction, int varId, int value) {
+    }
+
+
+    public void committed(int transaction, int varId, int value, int siteId) {
+    }
+
+
+    public void aborted(int transaction, AbortReason reason, int cause) {
+    }
+
+
+    public void restarted(int transaction, int retry) {
+    }
+
+
+    public void dumped(Dump dump) {
+    }
+
+
+    public void flush() {
+    }
+}
@@ -12,8 +12,6 @@
 package adb_project;
 
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 
@@ -43,43 +41,74 @@ public class Parser {
 
 
     /**
-     * Breaks up an input line into an array of strings
+     * Parses a single input line into an Instruction object
+     * @param line - string input for one instruction
+     * @return Instruction - instruction object
+     */
+    public Instruction parseLine(String line) {
+        String[] temp = parseInstruction(line);
+        Instruction instruction;
+
+        for(int i = 0; i < temp.length; i++) {
+            temp[i] = temp[i].trim();
+        }
+
+        if(temp[0].equals("R")) {
+            instruction = new Instruction(Instruction.READ, parseInt(temp[1]), parseInt(temp[2]), 0);
+        } else if(temp[0].equals("W")) {
+            instruction = new Instruction(Instruction.WRITE, parseInt(temp[1]), parseInt(temp[2]),
+                    Integer.parseInt(temp[3]));
+        } else if(temp[0].equals("dump") && temp.length == 1) {
+            instruction = new Instruction(Instruction.DUMP, 0, 0, 0);
+        } else if(temp[0].equals("dump") && temp[1].charAt(0) == 'x') {
+            instruction = new Instruction(Instruction.DUMP_VARIABLE, 0, 0, parseInt(temp[1]));
+        } else if(temp[0].equals("dump") && temp.length > 1) {
+            instruction = new Instruction(Instruction.DUMP_SITE, 0, 0, Integer.parseInt(temp[1]));
+        } else {
+            instruction = new Instruction(Instruction.toOpcode(temp[0]), parseInt(temp[1]), 0, 0);
+        }
+
+        return instruction;
+    }
+
+
+    /**
+     * Reads every line of an input file into a list of instructions
      * @param path - path to file with instructions on each line
      * @return An ArrayList of Instruction Objects.
      */
     public ArrayList<Instruction> getInstructions(String path) throws IOException {
-        BufferedReader br = new BufferedReader(new FileReader(path));
-
         ArrayList<Instruction> instructions = new ArrayList<>();
-        String line;
-
-        while (br.ready()) {
-            line = br.readLine();
-            String[] temp = parseInstruction(line);
-            Instruction instruction;
-
-            for(int i = 0; i < temp.length; i++) {
-                temp[i] = temp[i].trim();
-            }
 
-            if(temp[0].equals("R")) {
-                instruction = new Instruction(temp[0], parseInt(temp[1]), parseInt(temp[2]), null);
-            } else if(temp[0].equals("W")) {
-                instruction = new Instruction(temp[0], parseInt(temp[1]), parseInt(temp[2]), Integer.parseInt(temp[3]));
-            } else if(temp[0].equals("dump") && temp.length == 1) {
-                instruction = new Instruction(temp[0], null, null, null);
-            } else if(temp[0].equals("dump") && temp[1].charAt(0) == 'x') {
-                instruction = new Instruction(temp[0]+"x", null, null, parseInt(temp[1]));
-            } else if(temp[0].equals("dump") && temp.length > 1) {
-                instruction = new Instruction(temp[0]+"i", null, null, Integer.parseInt(temp[1]));
-            } else {
-                instruction = new Instruction(temp[0], parseInt(temp[1]), null, null);
+        try (InstructionStream stream = streamInstructions(path)) {
+            while (stream.hasNext()) {
+                instructions.add(stream.next());
             }
-
-            instructions.add(instruction);
         }
 
         return instructions;
     }
 
+
+    /**
+     * Opens an input file for streaming.  Instructions are parsed as
+     * they are read so memory does not grow with the size of the file
+     * @param path - path to file with instructions on each line
+     * @return InstructionStream - lazy iterator of Instruction Objects
+     */
+    public InstructionStream streamInstructions(String path) throws IOException {
+        return new InstructionStream(this, path);
+    }
+
+
+    /**
+     * Opens an input file through a memory mapped scanner.  Same output as
+     * streamInstructions without the per line String and regex work
+     * @param path - path to file with instructions on each line
+     * @return MappedInstructionStream - lazy iterator of Instruction Objects
+     */
+    public MappedInstructionStream mapInstructions(String path) throws IOException {
+        return new MappedInstructionStream(path);
+    }
+
 }
@@ -0,0 +1,273 @@
+/**
+ * <h1>ReplicaRouter</h1>
+ * Picks the replica a read-only transaction reads a replicated variable
+ * from.  The live sites are cached in two sets, running and recovered,
+ * that are updated when a site fails, recovers or catches up, so a pick
+ * never looks at a failed site and never allocates.  Only sites that can
+ * read the variable are picked, so a copy that missed writes while its
+ * site was down is never read.  Running sites are preferred; recovered
+ * sites are only used when no running site can read the variable.
+ * <p>
+ * Policies:
+ * <ul>
+ *      <li>ROUND_ROBIN - each set is walked in turn</li>
+ *      <li>LEAST_LOADED - the site holding the fewest locks, ties go to the one sent the fewest reads</li>
+ *      <li>POWER_OF_TWO - the less loaded of two sites picked at random</li>
+ * </ul>
+ */
+
+package adb_project;
+
+
+import java.util.List;
+
+
+public class ReplicaRouter {
+
+    public enum Policy {
+        ROUND_ROBIN, LEAST_LOADED, POWER_OF_TWO
+    }
+
+    private static final int NONE = 0;
+    private static final int RUNNING = 1;
+    private static final int RECOVERED = 2;
+
+    private Policy policy;
+    private Site[][] members;
+    private int[] size;
+    private int[] set;
+    private int[] position;
+    private int[] next;
+    private long[] routed;
+    private int seed;
+
+
+    /**
+     * Creates a router over a list of sites, placing each by its current state
+     * @param sites - all sites
+     * @param policy - how a replica is picked
+     *
+     * <ul>
+     *      <li>members - sites in each set, the first size[set] are used</li>
+     *      <li>set / position - which set a site is in and where, by site ID</li>
+     *      <li>next - round-robin position in each set</li>
+     *      <li>routed - reads sent to each site, by site ID</li>
+     * </ul>
+     */
+    public ReplicaRouter(List<Site> sites, Policy policy) {
+        int ids = 1;
+        for (Site site : sites) {
+            ids = Math.max(ids, site.getId() + 1);
+        }
+
+        this.policy = policy;
+        this.members = new Site[3][sites.size()];
+        this.size = new int[3];
+        this.set = new int[ids];
+        this.position = new int[ids];
+        this.next = new int[3];
+        this.routed = new long[ids];
+        this.seed = 0x2545F491;
+
+        for (Site site : sites) {
+            siteChanged(site);
+        }
+    }
+
+
+    /**
+     * Sets how replicas are picked
+     * @param policy - replica policy
+     */
+    public void setPolicy(Policy policy) {
+        this.policy = policy;
+    }
+
+
+    /**
+     * Gets how replicas are picked
+     * @return Policy - replica policy
+     */
+    public Policy getPolicy() {
+        return policy;
+    }
+
+
+    /**
+     * Moves a site into the set for its current state.  Called when a site
+     * fails, recovers or catches up
+     * @param site - site whose state changed
+     */
+    public void siteChanged(Site site) {
+        String state = site.getSiteState();
+        int target = state.equals("running") ? RUNNING : state.equals("recovered") ? RECOVERED : NONE;
+        int id = site.getId();
+
+        if (set[id] == target) {
+            return;
+        }
+
+        if (set[id] != NONE) {
+            // Swap the last member into the hole
+            int from = set[id];
+            int last = --size[from];
+            Site moved = members[from][last];
+            members[from][position[id]] = moved;
+            position[moved.getId()] = position[id];
+            members[from][last] = null;
+        }
+
+        set[id] = target;
+        if (target != NONE) {
+            position[id] = size[target];
+            members[target][size[target]++] = site;
+        }
+    }
+
+
+    /**
+     * Picks the replica to read a variable from
+     * @param varId - variable ID
+     * @return Site - running site that can read the variable if there is one, else a
+     *                recovered one, null if no live site can read it
+     */
+    public Site route(int varId) {
+        Site site = route(RUNNING, varId);
+        if (site == null) {
+            site = route(RECOVERED, varId);
+        }
+        if (site == null) {
+            return null;
+        }
+
+        routed[site.getId()]++;
+        return site;
+    }
+
+
+    /**
+     * Picks a site of a set that can read a variable
+     * @param from - set to pick from
+     * @param varId - variable ID
+     * @return Site - site or null if none of the set can read the variable
+     */
+    private Site route(int from, int varId) {
+        if (size[from] == 0) {
+            return null;
+        }
+
+        switch (policy) {
+            case LEAST_LOADED:
+                return leastLoaded(from, varId);
+            case POWER_OF_TWO:
+                return powerOfTwo(from, varId);
+            default:
+                return roundRobin(from, varId);
+        }
+    }
+
+
+    /**
+     * Gets the number of reads sent to a site
+     * @param siteId - site ID
+     * @return long - reads routed to the site
+     */
+    public long getRoutedCount(int siteId) {
+        return routed[siteId];
+    }
+
+
+    /**
+     * Next site of a set in turn that can read a variable
+     * @param from - set to pick from
+     * @param varId - variable ID
+     * @return Site - site or null if none can read the variable
+     */
+    private Site roundRobin(int from, int varId) {
+        int i = next[from];
+        for (int tried = 0; tried < size[from]; tried++, i++) {
+            if (i >= size[from]) {
+                i = 0;
+            }
+            if (members[from][i].isOkToRead(varId)) {
+                next[from] = i + 1;
+                return members[from][i];
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Site of a set holding the fewest locks.  Ties go to the site that has
+     * been sent the fewest reads so equally loaded sites share the reads.
+     * Sites that can't read the variable are passed over
+     * @param from - set to pick from
+     * @param varId - variable ID
+     * @return Site - site or null if none can read the variable
+     */
+    private Site leastLoaded(int from, int varId) {
+        Site best = null;
+        int bestLoad = 0;
+        for (int i = 0; i < size[from]; i++) {
+            Site site = members[from][i];
+            if (!site.isOkToRead(varId)) {
+                continue;
+            }
+            int load = site.getLockedVariableCount();
+            if (best == null || load < bestLoad
+                    || (load == bestLoad && routed[site.getId()] < routed[best.getId()])) {
+                best = site;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+
+
+    /**
+     * The less loaded of two different sites of a set picked at random.  If
+     * only one of them can read the variable it is picked, and if neither
+     * can the set is walked in turn instead
+     * @param from - set to pick from
+     * @param varId - variable ID
+     * @return Site - site or null if none can read the variable
+     */
+    private Site powerOfTwo(int from, int varId) {
+        int count = size[from];
+        if (count == 1) {
+            return members[from][0].isOkToRead(varId) ? members[from][0] : null;
+        }
+
+        int a = nextInt(count);
+        int b = nextInt(count - 1);
+        if (b >= a) {
+            b++;
+        }
+
+        Site first = members[from][a];
+        Site second = members[from][b];
+        if (!first.isOkToRead(varId)) {
+            return second.isOkToRead(varId) ? second : roundRobin(from, varId);
+        }
+        if (!second.isOkToRead(varId)) {
+            return first;
+        }
+        return (second.getLockedVariableCount() < first.getLockedVariableCount()) ? second : first;
+    }
+
+
+    /**
+     * Xorshift random number, kept inline so a pick doesn't allocate or contend
+     * @param bound - upper bound, exclusive
+     * @return int - random number in [0, bound)
+     */
+    private int nextInt(int bound) {
+        int x = seed;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        seed = x;
+        return (int) (((x & 0xFFFFFFFFL) * bound) >>> 32);
+    }
+}
@@ -0,0 +1,264 @@
+/**
+ * <h1>RetryScheduler</h1>
+ * Restarts aborted transactions instead of dropping the rest of their
+ * work.  Every begin, read, write and end of a transaction is kept
+ * until it commits.  Once it is aborted it backs off for a number of
+ * ticks that doubles with each retry, and whatever instructions arrive
+ * for it meanwhile are held back.  When the backoff is over the Task
+ * Manager begins it again with a fresh start time and replays its
+ * instructions in order, pausing whenever it has to wait for a lock or
+ * a site, and new instructions are held back until the replay has
+ * caught up.  A transaction aborted more often than the retry limit is
+ * given up on, as it would be without a scheduler.
+ */
+
+package adb_project;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+
+public class RetryScheduler {
+
+    // Backoff stops doubling after this many retries
+    private static final int MAX_DOUBLINGS = 16;
+
+    private int maxRetries;
+    private int backoff;
+    private HashMap<Integer, Attempt> attempts;
+    private PriorityQueue<Attempt> scheduled;
+    private ArrayList<Attempt> replaying;
+
+
+    /**
+     * A transaction's instructions so far and where it is in its retries
+     */
+    private static final class Attempt {
+
+        private int id;
+        private ArrayList<Instruction> instructions;
+        private int retries;
+        private int due;
+        private int replayed;
+
+
+        private Attempt(int id) {
+            this.id = id;
+            this.instructions = new ArrayList<>();
+            this.due = -1;
+            this.replayed = -1;
+        }
+
+
+        private boolean isBackingOff() {
+            return due >= 0;
+        }
+
+
+        private boolean isReplaying() {
+            return replayed >= 0;
+        }
+    }
+
+
+    /**
+     * Creates a scheduler
+     * @param maxRetries - times a transaction is restarted before it is given up on
+     * @param backoff - ticks waited before the first restart, doubled for each one after
+     *
+     * <ul>
+     *      <li>attempts - transactions that have begun and not committed or been given up on</li>
+     *      <li>scheduled - transactions backing off, earliest restart first</li>
+     *      <li>replaying - restarted transactions whose instructions are still being replayed</li>
+     * </ul>
+     */
+    public RetryScheduler(int maxRetries, int backoff) {
+        if (maxRetries < 0 || backoff < 0) {
+            throw new IllegalArgumentException("Retries and backoff cannot be negative");
+        }
+
+        this.maxRetries = maxRetries;
+        this.backoff = backoff;
+        this.attempts = new HashMap<>();
+        this.scheduled = new PriorityQueue<>((a, b) -> (a.due != b.due)
+                ? Integer.compare(a.due, b.due) : Integer.compare(a.id, b.id));
+        this.replaying = new ArrayList<>();
+    }
+
+
+    /**
+     * Keeps an instruction from the input for its transaction
+     * @param I - begin, read, write or end instruction
+     * @return Boolean - true/false whether the transaction is backing off or being
+     *                   replayed, in which case the instruction is held back for the replay
+     */
+    public boolean record(Instruction I) {
+        int opcode = I.getOpcode();
+
+        if (opcode == Instruction.BEGIN || opcode == Instruction.BEGIN_RO) {
+            Attempt attempt = new Attempt(I.getId());
+            attempt.instructions.add(I);
+            attempts.put(I.getId(), attempt);
+            return false;
+        }
+
+        Attempt attempt = attempts.get(I.getId());
+        if (attempt == null) {
+            return false;
+        }
+
+        attempt.instructions.add(I);
+        if (attempt.isBackingOff() || attempt.isReplaying()) {
+            return true;
+        }
+        if (opcode == Instruction.END) {
+            ended(I.getId());
+        }
+        return false;
+    }
+
+
+    /**
+     * Forgets a transaction that is ending - it has nothing left to retry
+     * @param id - transaction ID
+     */
+    public void ended(int id) {
+        Attempt attempt = attempts.remove(id);
+        if (attempt != null && attempt.isReplaying()) {
+            stopReplay(attempt);
+        }
+    }
+
+
+    /**
+     * Schedules an aborted transaction to restart, or gives up on it once it
+     * has used up its retries
+     * @param T - aborted transaction
+     * @param time - current time
+     * @return Boolean - true/false whether it will be restarted
+     */
+    public boolean aborted(Transaction T, int time) {
+        Attempt attempt = attempts.get(T.getID());
+        if (attempt == null || attempt.isBackingOff()) {
+            return attempt != null;
+        }
+
+        if (attempt.isReplaying()) {
+            stopReplay(attempt);
+        }
+        if (attempt.retries >= maxRetries) {
+            attempts.remove(T.getID());
+            return false;
+        }
+
+        attempt.retries++;
+        long wait = (long) backoff << Math.min(attempt.retries - 1, MAX_DOUBLINGS);
+        attempt.due = (int) Math.min(time + wait, Integer.MAX_VALUE);
+        scheduled.add(attempt);
+        return true;
+    }
+
+
+    /**
+     * Checks whether any transaction is waiting to be restarted
+     * @return Boolean - true/false whether a restart is scheduled
+     */
+    public boolean hasScheduled() {
+        return !scheduled.isEmpty();
+    }
+
+
+    /**
+     * Gets when the next restart is due
+     * @return int - time of the earliest restart
+     */
+    public int nextDue() {
+        return scheduled.peek().due;
+    }
+
+
+    /**
+     * Checks whether any restarted transaction is still being replayed
+     * @return Boolean - true/false whether a replay is in progress
+     */
+    public boolean isReplaying() {
+        return !replaying.isEmpty();
+    }
+
+
+    /**
+     * Takes the next transaction whose backoff is over and starts replaying it
+     * @param time - current time
+     * @return int - transaction ID, 0 if no restart is due
+     */
+    public int pollDue(int time) {
+        Attempt attempt = scheduled.peek();
+        if (attempt == null || attempt.due > time) {
+            return 0;
+        }
+
+        scheduled.poll();
+        attempt.due = -1;
+        attempt.replayed = 0;
+        replaying.add(attempt);
+        return attempt.id;
+    }
+
+
+    /**
+     * Gets the transactions being replayed
+     * @return List - transaction IDs, in the order they were restarted
+     */
+    public List<Integer> getReplaying() {
+        ArrayList<Integer> ids = new ArrayList<>(replaying.size());
+        for (Attempt attempt : replaying) {
+            ids.add(attempt.id);
+        }
+        return ids;
+    }
+
+
+    /**
+     * Takes the next instruction to replay for a restarted transaction, its
+     * begin first.  Once every instruction kept for it has been replayed the
+     * replay is over and new instructions are no longer held back
+     * @param id - transaction ID
+     * @return Instruction - next instruction, null if it is not being replayed or has caught up
+     */
+    public Instruction nextReplayed(int id) {
+        Attempt attempt = attempts.get(id);
+        if (attempt == null || !attempt.isReplaying()) {
+            return null;
+        }
+
+        if (attempt.replayed == attempt.instructions.size()) {
+            stopReplay(attempt);
+            return null;
+        }
+        return attempt.instructions.get(attempt.replayed++);
+    }
+
+
+    /**
+     * Ends the replay of a transaction
+     * @param attempt - transaction being replayed
+     */
+    private void stopReplay(Attempt attempt) {
+        attempt.replayed = -1;
+        replaying.remove(attempt);
+    }
+
+
+    /**
+     * Gets how many times a transaction has been restarted
+     * @param id - transaction ID
+     * @return int - retries, 0 if it is not being tracked
+     */
+    public int getRetries(int id) {
+        Attempt attempt = attempts.get(id);
+        return (attempt == null) ? 0 : attempt.retries;
+    }
+}
@@ -10,49 +10,74 @@
 package adb_project;
 
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Set;
 
 
 public class Site {
 
     private Integer id;
-    private HashMap<String, Variable> variables;
-    private HashMap<String, HashMap<Transaction, Instruction>> lockTable;
+    private Topology topology;
+    private IntMap<Variable> variables;
+    private BitSet unreadable;
+    private int variableCount;
+    private LockManager lockTable;
     private String state;
+    private long versionsReclaimed;
+    private long versionTotal;
+    private SiteLog log;
+    private int logTime;
+    private BitSet dirty;
+    private int checkpointEvery;
+    private Checkpointer checkpointer;
+    private volatile long checkpointSegment;
+    private volatile boolean checkpointRunning;
+    private volatile IOException checkpointError;
+
+
+    /**
+     * Creates a Site object with the default topology
+     * @param id - site ID
+     */
+    public Site(Integer id) {
+        this(id, Topology.DEFAULT);
+    }
 
 
     /**
      * Creates a Site object
      * @param id - site ID
+     * @param topology - layout deciding which variables the site stores
      *
      * <ul>
-     *      <li>variables - variables on the site</li>
-     *      <li>lockTable - Java doesn't have tuple types so using a hashmap to emulate it:
-     *          This is a hashmap with Variable as the key and it's value is
-     *          a tuple-like record created using a single record hashmap.
-     *          This looks like [Variable -> [TransactionID, Instruction]]</li>
+     *      <li>variables - variables on the site keyed by variable ID.  A variable is only
+     *          created once it is committed or asked for, and a variable that was never
+     *          touched still has its initial value, so large keyspaces only cost what is
+     *          used</li>
+     *      <li>unreadable - variables that can't be read since the site recovered</li>
+     *      <li>lockTable - LockManager with a shared/exclusive LockEntry per variable</li>
      *      <li>Possible states for a Site - running, failed, recovered</li>
+     *      <li>log - write-ahead log of commits, null if the site is not durable</li>
+     *      <li>dirty - variables committed since the last checkpoint</li>
+     *      <li>checkpointSegment - log segment of the last checkpoint written, -1 if there is none</li>
+     *      <li>versionTotal - versions kept by all created variables, read by the metrics</li>
      * </ul>
      */
-    public Site(Integer id) {
+    public Site(Integer id, Topology topology) {
         this.id = id;
+        this.topology = topology;
         this.state = "running";
-        this.variables = new HashMap<>();
-        this.lockTable = initializeLockTable();
-
-        // Only adds applicable variables to the site
-        for (int i = 1; i <= 20; i++) {
-            Variable v = new Variable(i);
-
-            if (i % 2 == 0) {
-                variables.put("x" + i, v);
-            } else if ((1 + i % 10) == id) {
-                variables.put("x" + i, v);
-            }
-        }
+        this.variables = new IntMap<>();
+        this.unreadable = new BitSet();
+        this.variableCount = -1;
+        this.lockTable = new LockManager();
+        this.dirty = new BitSet();
+        this.checkpointSegment = -1;
     }
 
 
@@ -84,57 +109,417 @@ public class Site {
 
 
     /**
-     * HashMap of all variables on this site
-     * @return HashMap
+     * Checks whether a variable is stored on this site
+     * @param id - variable ID
+     * @return Boolean - true/false if the variable is on the site
      */
-    public HashMap<String, Variable> getAllVariables() {
-        return variables;
+    public boolean hasVariable(int id) {
+        return topology.isOnSite(id, this.id);
     }
 
 
     /**
-     * Gets specific variable by supplying its id
-     * @param id - variable ID string
-     * @return Variable - variable object
+     * List of the variables on this site that have been created, in ID order.
+     * Variables that were never touched are not included - they still have
+     * their initial values
+     * @return ArrayList
      */
-    public Variable getVariable(String id) {
+    public ArrayList<Variable> getAllVariables() {
+        ArrayList<Variable> result = new ArrayList<>();
+        for (int varId : variables.sortedKeys()) {
+            result.add(variables.get(varId));
+        }
+        return result;
+    }
+
+
+    /**
+     * Gets specific variable by supplying its id.  The variable is created
+     * with its initial value the first time it is asked for
+     * @param id - variable ID
+     * @return Variable - variable object or null if the variable is not on the site
+     */
+    public Variable getVariable(int id) {
+        if (!hasVariable(id)) {
+            return null;
+        }
+
+        Variable variable = variables.get(id);
+        if (variable == null) {
+            variable = new Variable(id);
+            variables.put(id, variable);
+            versionTotal += variable.getVersionCount();
+        }
+        return variable;
+    }
+
+
+    /**
+     * Gets a variable only if it has already been created
+     * @param id - variable ID
+     * @return Variable - variable object or null
+     */
+    private Variable peekVariable(int id) {
         return variables.get(id);
     }
 
 
+    /**
+     * Gets the current value of a variable without creating it
+     * @param id - variable ID
+     * @return int - current value
+     */
+    public int getValue(int id) {
+        Variable variable = peekVariable(id);
+        return (variable == null) ? Variable.initialValue(id) : variable.getValue();
+    }
+
+
+    /**
+     * Gets the value of a variable as of a time without creating it
+     * @param id - variable ID
+     * @param time - snapshot time
+     * @return int - value at that time or -1 if there is none
+     */
+    public int getPreviousValue(int id, int time) {
+        Variable variable = peekVariable(id);
+        if (variable == null) {
+            return (time >= 1) ? Variable.initialValue(id) : -1;
+        }
+        return variable.getPreviousValue(time);
+    }
+
+
+    /**
+     * Checks whether a variable can be read.  After a recovery replicated
+     * variables can't be read until they are written again
+     * @param id - variable ID
+     * @return Boolean - true/false if the variable can be read
+     */
+    public boolean isOkToRead(int id) {
+        return !unreadable.get(id);
+    }
+
+
+    /**
+     * Sets whether a variable can be read
+     * @param id - variable ID
+     * @param okNotOk - Boolean field
+     */
+    public void setOkToRead(int id, boolean okNotOk) {
+        unreadable.set(id, !okNotOk);
+    }
+
+
+    /**
+     * Gets the next variable that can't be read since the site recovered
+     * @param from - variable ID to start looking at
+     * @return int - variable ID or -1 if there is none from there on
+     */
+    public int nextUnreadable(int from) {
+        return unreadable.nextSetBit(from);
+    }
+
+
+    /**
+     * Catches up a variable that can't be read since the site recovered by
+     * copying the committed value and versions another site has for it.
+     * The variable can be read once the copy lands.  Copies are not logged -
+     * a restart from the log finds the variable unreadable again, and it is
+     * copied again
+     * @param source - live site holding a readable copy
+     * @param id - variable ID
+     */
+    public void copyVariable(Site source, int id) {
+        Variable variable = source.peekVariable(id);
+        Variable old = variables.remove(id);
+        if (old != null) {
+            versionTotal -= old.getVersionCount();
+        }
+        // A variable never written anywhere already has the right initial value.
+        // An old copy is reset to it so the next checkpoint replaces the old one
+        if (variable == null && old != null) {
+            variable = new Variable(id);
+        }
+        if (variable != null) {
+            variables.put(id, variable.copy());
+            versionTotal += variable.getVersionCount();
+            if (log != null) {
+                dirty.set(id);
+            }
+        }
+        unreadable.clear(id);
+    }
+
+
     /**
      * Updates a variable's value at transaction commit
-     * @param id - variable ID string
+     * @param id - variable ID
      * @param value - value of variable
      * @param time - time when variable was updated
+     * @param lowWaterMark - versions older than this are no longer needed
      */
-    private void updateVariable(String id, Integer value, int time) {
-        variables.get(id).updateValue(value, time);
-        variables.get(id).valueCommitted();
-        if(!variables.get(id).getOkToRead()) {
-            variables.get(id).setOkToRead(true);
+    private void updateVariable(int id, Integer value, int time, int lowWaterMark) {
+        Variable variable = getVariable(id);
+        int versions = variable.getVersionCount();
+        variable.updateValue(value, time);
+        versionsReclaimed += variable.pruneVersions(lowWaterMark);
+        versionTotal += variable.getVersionCount() - versions;
+        variable.valueCommitted();
+        unreadable.clear(id);
+
+        if (log != null) {
+            try {
+                log.commit(id, value, time);
+                dirty.set(id);
+                logTime = time;
+                if (checkpointer != null && !checkpointRunning
+                        && log.getSegmentRecordCount() >= checkpointEvery) {
+                    checkpoint();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
         }
     }
 
 
+    /**
+     * Makes the site durable.  The site's variables and version history are
+     * rebuilt from the newest checkpoint and the log segments after it, then
+     * every commit, fail and recover is appended to the log.  A site that was
+     * down when the log ends comes back the same way a recovered site does,
+     * with its replicated copies unreadable
+     * @param directory - directory holding the site logs and checkpoints
+     * @param checkpointEvery - log records per checkpoint, 0 for no checkpoints
+     * @param checkpointer - writes the checkpoints, null for no checkpoints
+     * @return int - time of the newest record recovered, 0 if there is none
+     */
+    public int openLog(Path directory, int checkpointEvery, Checkpointer checkpointer) throws IOException {
+        int[] newest = new int[1];
+        boolean[] failed = new boolean[1];
+
+        ArrayList<Long> checkpoints = SiteLog.listNumbered(directory, id, ".snap");
+        long first = 0;
+        if (!checkpoints.isEmpty()) {
+            first = checkpoints.get(checkpoints.size() - 1);
+            SiteSnapshot snapshot = SiteSnapshot.read(SiteSnapshot.file(directory, id, first));
+            for (Variable variable : snapshot.getVariables()) {
+                variables.put(variable.getIndex(), variable);
+                versionTotal += variable.getVersionCount();
+            }
+            unreadable = snapshot.getUnreadable();
+            failed[0] = snapshot.isFailed();
+            newest[0] = snapshot.getTime();
+            checkpointSegment = first;
+        }
+
+        long last = first;
+        for (long segment : SiteLog.listNumbered(directory, id, ".wal")) {
+            if (segment < first) {
+                continue;
+            }
+            SiteLog.replay(SiteLog.segmentFile(directory, id, segment), (type, varId, value, time) -> {
+                if (type == SiteLog.COMMIT) {
+                    Variable variable = getVariable(varId);
+                    int versions = variable.getVersionCount();
+                    variable.updateValue(value, time);
+                    variable.valueCommitted();
+                    versionTotal += variable.getVersionCount() - versions;
+                    unreadable.clear(varId);
+                    dirty.set(varId);
+                } else if (type == SiteLog.FAIL) {
+                    failed[0] = true;
+                } else if (type == SiteLog.RECOVER) {
+                    failed[0] = false;
+                    markReplicatedUnreadable();
+                }
+                newest[0] = Math.max(newest[0], time);
+            });
+            last = segment;
+        }
+
+        // Left behind if a checkpoint was written but the run stopped before cleaning up
+        SiteLog.deleteSegmentsBefore(directory, id, first);
+        SiteSnapshot.deleteBefore(directory, id, first);
+
+        this.log = new SiteLog(directory, id, last);
+        this.logTime = newest[0];
+        this.checkpointEvery = checkpointEvery;
+        this.checkpointer = (checkpointEvery > 0) ? checkpointer : null;
+        if (failed[0]) {
+            recover(newest[0]);
+        }
+        return newest[0];
+    }
+
+
+    /**
+     * Takes a checkpoint.  The variables changed since the last checkpoint are
+     * copied and the log moves on to a new segment, then the checkpoint is
+     * written by the checkpointer while the site keeps going.  If the last
+     * checkpoint failed there is nothing to merge with and every committed
+     * variable is copied
+     */
+    public void checkpoint() throws IOException {
+        IOException failure = checkpointError;
+        long base = (failure == null) ? checkpointSegment : -1;
+
+        ArrayList<Variable> changed = new ArrayList<>();
+        if (base < 0) {
+            for (int varId : variables.sortedKeys()) {
+                Variable variable = variables.get(varId);
+                if (variable.checkCommitted()) {
+                    changed.add(variable.copy());
+                }
+            }
+        } else {
+            for (int varId = dirty.nextSetBit(0); varId >= 0; varId = dirty.nextSetBit(varId + 1)) {
+                Variable variable = variables.get(varId);
+                if (variable != null) {
+                    changed.add(variable.copy());
+                }
+            }
+        }
+        dirty.clear();
+        checkpointError = null;
+
+        long segment = log.roll();
+        checkpointRunning = true;
+        checkpointer.submit(this, new SiteSnapshot(segment, base, logTime, state.equals("failed"),
+                (BitSet) unreadable.clone(), changed));
+    }
+
+
+    /**
+     * Called by the checkpointer when a checkpoint is done
+     * @param segment - first log segment the checkpoint does not cover
+     * @param failure - why the checkpoint couldn't be written, null if it was
+     */
+    public void checkpointFinished(long segment, IOException failure) {
+        if (failure == null) {
+            checkpointSegment = segment;
+        } else {
+            checkpointError = failure;
+        }
+        checkpointRunning = false;
+    }
+
+
+    /**
+     * Forces the commits logged since the last sync to disk, if the site has
+     * a log and there are any
+     */
+    public void syncLog() {
+        if (log != null && log.hasUnsynced()) {
+            try {
+                log.sync();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+
+    /**
+     * Syncs and closes the log if the site has one.  Checkpoints still being
+     * written have to be finished first, see Checkpointer.shutdown
+     */
+    public void closeLog() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+            checkpointer = null;
+        }
+        if (checkpointError != null) {
+            IOException failure = checkpointError;
+            checkpointError = null;
+            throw failure;
+        }
+    }
+
+
+    /**
+     * Gets the site's write-ahead log
+     * @return SiteLog - log or null if the site is not durable
+     */
+    public SiteLog getLog() {
+        return log;
+    }
+
+
+    /**
+     * Gets the number of old versions garbage collected on this site
+     * @return long - versions reclaimed
+     */
+    public long getVersionsReclaimed() {
+        return versionsReclaimed;
+    }
+
+
+    /**
+     * Gets the number of versions kept by the variables created on this site.
+     * May be read from another thread, which can see a slightly older count
+     * @return long - versions kept
+     */
+    public long getVersionTotal() {
+        return versionTotal;
+    }
+
+
+    /**
+     * Gets the number of variables created on this site.  Variables that were
+     * never touched are not stored and not counted
+     * @return int - variables stored
+     */
+    public int getStoredVariableCount() {
+        return variables.size();
+    }
+
+
     /**
      * Get lock table size for variable
      * @param id - variable Id
      */
-    public int getLockCount(String id) {
-        return lockTable.get(id).size();
+    public int getLockCount(int id) {
+        LockEntry entry = lockTable.getEntry(id);
+        return (entry == null) ? 0 : entry.getLockCount();
     }
 
 
     /**
-     * Adds a transaction to a variable's lock table HashMap
+     * Gets the number of variables locked on the site, a measure of how busy it is
+     * @return int - locked variable count
+     */
+    public int getLockedVariableCount() {
+        return lockTable.getLockedVariableCount();
+    }
+
+
+    /**
+     * Adds a transaction to a variable's lock entry.  A write by a transaction
+     * that holds the only read lock upgrades that lock in place
      * @param t - transaction object
      * @param varId - variable ID
      * @param instruction - instruction object
      */
-    public void lockVariable(Transaction t, String varId, Instruction instruction) {
-        lockTable.get(varId).put(t, instruction);
-        t.plusOnSites(this.id);
+    public void lockVariable(Transaction t, int varId, Instruction instruction) {
+        if(lockTable.lock(t, varId, instruction)) {
+            t.plusOnSites(this.id);
+        }
+    }
+
+
+    /**
+     * Checks whether a transaction could get a write lock on a variable - either
+     * it is unlocked or the transaction is its only holder
+     * @param t - transaction object
+     * @param varId - variable ID
+     * @return Boolean - true/false if the write lock can be granted
+     */
+    public boolean canWriteLock(Transaction t, int varId) {
+        LockEntry entry = lockTable.getEntry(varId);
+        return entry == null || entry.canLockExclusive(t);
     }
 
 
@@ -144,17 +529,20 @@ public class Site {
      * @param t - transaction object
      * @param varId - variable ID
      * @param time - time when variable is updated
+     * @param lowWaterMark - low-water mark for pruning old versions, see TM.getLowWaterMark
      */
-    public Integer handleLockTable(Transaction t, String varId, int time) {
-        Instruction instruction = lockTable.get(varId).get(t);
+    public Integer handleLockTable(Transaction t, int varId, int time, int lowWaterMark) {
+        LockEntry entry = lockTable.getEntry(varId);
+        Instruction instruction = (entry != null && entry.getOwner() == t) ? entry.getOwnerInstruction() : null;
         Boolean updated = false;
-        if(instruction.getInstruction().equals("W")) {
-            updateVariable(varId, instruction.getValue(), time);
+        if(instruction != null) {
+            updateVariable(varId, instruction.getValue(), time, lowWaterMark);
             updated = true;
         }
-        lockTable.get(varId).remove(t);
         t.removeLockedVariableType(varId);
-        t.decOnSites(this.id);
+        if(lockTable.release(t, varId)) {
+            t.decOnSites(this.id);
+        }
 
         if(updated) {
             return instruction.getValue();
@@ -171,17 +559,9 @@ public class Site {
      * @param varId - variable ID
      * @return Boolean - true/false if variable is write locked
      */
-    public boolean isVariableWriteLocked(String varId) {
-
-        if(lockTable.size() != 0 && lockTable.get(varId).size() != 0) {
-            if (lockTable.get(varId).entrySet().iterator().next().getValue().getInstruction().equals("R")) {
-                return false;
-            } else {
-                return true;
-            }
-        } else {
-            return false;
-        }
+    public boolean isVariableWriteLocked(int varId) {
+        LockEntry entry = lockTable.getEntry(varId);
+        return entry != null && entry.isWriteLocked();
     }
 
 
@@ -190,8 +570,9 @@ public class Site {
      * @param varId - variable ID
      * @return Boolean - true/false if variable is locked
      */
-    public boolean isVariableLocked(String varId) {
-        return ((lockTable.size() != 0) && (lockTable.get(varId).size() != 0));
+    public boolean isVariableLocked(int varId) {
+        LockEntry entry = lockTable.getEntry(varId);
+        return entry != null && entry.isLocked();
     }
 
 
@@ -199,28 +580,7 @@ public class Site {
      * Clears the lock table when a site fails
      */
     public void clearLocktable() {
-        this.lockTable = new HashMap<>();
-    }
-
-
-    /**
-     * Initializes lock table
-     * @return HashMap - Nested HashMap - variable and it's transaction / instruction
-     */
-    private HashMap<String, HashMap<Transaction, Instruction>> initializeLockTable() {
-
-        HashMap<String, HashMap<Transaction, Instruction>> temp = new HashMap<>();
-
-        // Only adds applicable variables to the site
-        for (int i = 1; i <= 20; i++) {
-            if (i % 2 == 0) {
-                temp.put("x" + i, new HashMap<>());
-            } else if ((1 + i % 10) == id) {
-                temp.put("x" + i, new HashMap<>());
-            }
-        }
-
-        return temp;
+        lockTable.clear();
     }
 
 
@@ -229,13 +589,7 @@ public class Site {
      * @return Set - locked transaction objects
      */
     public Set<Transaction> getLockedTransactions(){
-        Set<Transaction> lockedTransactions = new HashSet<>();
-        for (HashMap.Entry<String, HashMap<Transaction, Instruction>> entry : this.lockTable.entrySet()) {
-            for (HashMap.Entry<Transaction, Instruction> tEntry : entry.getValue().entrySet()) {
-                lockedTransactions.add(tEntry.getKey());
-            }
-        }
-        return lockedTransactions;
+        return lockTable.getLockedTransactions();
     }
 
 
@@ -243,15 +597,15 @@ public class Site {
      * Gets the transactions locked on a variable
      * @param varId - variable ID
      */
-    public Set<Transaction> getTransactionsLockedOnVariable(String varId){
+    public Set<Transaction> getTransactionsLockedOnVariable(int varId){
+        if(!hasVariable(varId)) {
+            return null;
+        }
+
         Set<Transaction> lockedTransactions = new HashSet<>();
-        HashMap<Transaction, Instruction> transactions = this.lockTable.get(varId);
-        if(transactions != null) {
-            for (HashMap.Entry<Transaction, Instruction> t : transactions.entrySet()) {
-                lockedTransactions.add(t.getKey());
-            }
-        } else {
-            lockedTransactions = null;
+        LockEntry entry = lockTable.getEntry(varId);
+        if(entry != null) {
+            entry.addHolders(lockedTransactions);
         }
         return lockedTransactions;
     }
@@ -262,14 +616,9 @@ public class Site {
      * @param T - transaction object
      */
     public void removeFromLockTable(Transaction T) {
-        for (HashMap.Entry<String, HashMap<Transaction, Instruction>> entry : this.lockTable.entrySet()) {
-            for (Iterator<HashMap.Entry<Transaction, Instruction>> it =
-                 entry.getValue().entrySet().iterator(); it.hasNext();) {
-                Transaction t = it.next().getKey();
-                if (T.getID().equals(t.getID())) {
-                    it.remove();
-                }
-            }
+        int released = lockTable.releaseAll(T);
+        for (int i = 0; i < released; i++) {
+            T.decOnSites(this.id);
         }
     }
 
@@ -279,25 +628,58 @@ public class Site {
      * @return Integer - count of variables on the site
      */
     public int getVariableCount() {
-        return variables.size();
+        if (variableCount < 0) {
+            variableCount = topology.countVariablesOnSite(this.id);
+        }
+        return variableCount;
+    }
+
+
+    /**
+     * Marks the site as failed.  The lock table is cleared by the caller once
+     * the transactions holding locks here have been aborted
+     * @param time - time of the failure
+     */
+    public void fail(int time) {
+        setSiteState("failed");
+        if (log != null) {
+            try {
+                logTime = time;
+                log.fail(time);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
     }
 
 
     /**
      * When a site is recoved, variables are set to whether they can be
-     * read from (odd) or not (even).  Also initializes the lock table
-     * since it was wiped out when the site failed
-     */
-    public void recover() {
-        for (HashMap.Entry<String, Variable> entry : this.variables.entrySet()) {
-            Integer id = Integer.parseInt(entry.getKey().replaceAll("\\D+",""));
-            if(id % 2 == 0) {
-                entry.getValue().setOkToRead(false);
-            } else {
-                entry.getValue().setOkToRead(true);
+     * read from (not replicated) or not (replicated).  Also initializes the
+     * lock table since it was wiped out when the site failed
+     * @param time - time of the recovery
+     */
+    public void recover(int time) {
+        setSiteState("recovered");
+        markReplicatedUnreadable();
+        lockTable.clear();
+        if (log != null) {
+            try {
+                logTime = time;
+                log.recover(time);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
         }
-        lockTable = initializeLockTable();
+    }
+
+
+    /**
+     * Marks every replicated variable as unreadable and every other one as readable
+     */
+    private void markReplicatedUnreadable() {
+        unreadable.clear();
+        topology.markReplicated(unreadable);
     }
 
 
@@ -0,0 +1,386 @@
+/**
+ * <h1>SiteLog</h1>
+ * Append-only write-ahead log for a site.  Every committed write and every
+ * fail / recover of the site is appended as a fixed size binary record, and
+ * replaying the log rebuilds the site's variables and version history after
+ * a restart.
+ * <p>
+ * Records are put together in a buffer and written through a FileChannel
+ * as soon as they are appended, so a commit reaches the OS before it is
+ * reported and a crash of the process loses nothing.  Forcing the log to
+ * disk is left to the caller: GroupCommit syncs once per batch of commits
+ * and holds their reports until then.  Without it the log runs as an
+ * asynchronous commit log - commits are reported before they are forced
+ * and a crash of the machine can lose those the OS had not written yet.
+ * Fail and recover markers are always synced right away.
+ * <p>
+ * The log is split into numbered segments, site-&lt;id&gt;.&lt;segment&gt;.wal.
+ * A checkpoint rolls the log over to a new segment and once the checkpoint
+ * is on disk the segments before it are deleted, see SiteSnapshot.
+ */
+
+package adb_project;
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+
+
+public class SiteLog implements Closeable {
+
+    public static final byte COMMIT = 1;
+    public static final byte FAIL = 2;
+    public static final byte RECOVER = 3;
+
+    // type, variable ID, value, time
+    public static final int RECORD_SIZE = 13;
+
+    private static final int MAGIC = 0x41444257;
+    private static final int HEADER_SIZE = 4;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Path directory;
+    private int siteId;
+    private long segment;
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private int unsynced;
+    private long records;
+    private long syncs;
+
+
+    /**
+     * Receives the records of a log as it is replayed
+     */
+    public interface Replay {
+
+        /**
+         * Handles one record
+         * @param type - COMMIT, FAIL or RECOVER
+         * @param varId - variable ID, 0 for FAIL / RECOVER
+         * @param value - committed value
+         * @param time - time of the record
+         */
+        void record(byte type, int varId, int value, int time);
+    }
+
+
+    /**
+     * Opens a log segment for appending, creating it if it doesn't exist.  A
+     * record torn by a crash in the middle of a write is cut off the end of
+     * the segment
+     * @param directory - directory holding the site's logs
+     * @param siteId - site ID
+     * @param segment - segment number to append to
+     */
+    public SiteLog(Path directory, int siteId, long segment) throws IOException {
+        this.directory = directory;
+        this.siteId = siteId;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        open(segment);
+    }
+
+
+    /**
+     * Opens a segment and positions it after its last whole record
+     * @param segment - segment number
+     */
+    private void open(long segment) throws IOException {
+        Path file = segmentFile(directory, siteId, segment);
+        this.segment = segment;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        long size = channel.size();
+        if (size < HEADER_SIZE) {
+            channel.truncate(0);
+            buffer.putInt(MAGIC);
+            writeBuffer();
+            channel.force(true);
+            records = 0;
+        } else {
+            checkHeader(channel, file);
+            long whole = HEADER_SIZE + (size - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE;
+            if (whole != size) {
+                channel.truncate(whole);
+            }
+            records = (whole - HEADER_SIZE) / RECORD_SIZE;
+        }
+        channel.position(channel.size());
+    }
+
+
+    /**
+     * Syncs and closes the current segment and starts appending to the next one.
+     * Everything before the new segment can then be covered by a checkpoint
+     * @return long - number of the new segment
+     */
+    public long roll() throws IOException {
+        sync();
+        channel.close();
+        open(segment + 1);
+        return segment;
+    }
+
+
+    /**
+     * Appends a committed write and writes it through to the OS.  It is only
+     * on disk once the log is synced
+     * @param varId - variable ID
+     * @param value - committed value
+     * @param time - commit time
+     */
+    public void commit(int varId, int value, int time) throws IOException {
+        append(COMMIT, varId, value, time);
+        writeBuffer();
+        unsynced++;
+    }
+
+
+    /**
+     * Appends a marker that the site failed.  Synced right away since the
+     * site's copies can't be trusted after a restart without it
+     * @param time - time of the failure
+     */
+    public void fail(int time) throws IOException {
+        append(FAIL, 0, 0, time);
+        sync();
+    }
+
+
+    /**
+     * Appends a marker that the site recovered
+     * @param time - time of the recovery
+     */
+    public void recover(int time) throws IOException {
+        append(RECOVER, 0, 0, time);
+        sync();
+    }
+
+
+    /**
+     * Appends one record to the buffer
+     * @param type - record type
+     * @param varId - variable ID
+     * @param value - value
+     * @param time - time
+     */
+    private void append(byte type, int varId, int value, int time) throws IOException {
+        if (buffer.remaining() < RECORD_SIZE) {
+            writeBuffer();
+        }
+
+        buffer.put(type);
+        buffer.putInt(varId);
+        buffer.putInt(value);
+        buffer.putInt(time);
+        records++;
+    }
+
+
+    /**
+     * Checks whether commits were written since the last sync
+     * @return Boolean - true/false whether a sync has anything to force
+     */
+    public boolean hasUnsynced() {
+        return unsynced > 0;
+    }
+
+
+    /**
+     * Writes out the buffered records and forces them to disk
+     */
+    public void sync() throws IOException {
+        writeBuffer();
+        channel.force(false);
+        unsynced = 0;
+        syncs++;
+    }
+
+
+    /**
+     * Writes out the buffered records without forcing them
+     */
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+
+    /**
+     * Gets the number of records in the current segment
+     * @return long - record count
+     */
+    public long getSegmentRecordCount() {
+        return records;
+    }
+
+
+    /**
+     * Gets the number of the segment being appended to
+     * @return long - segment number
+     */
+    public long getSegment() {
+        return segment;
+    }
+
+
+    /**
+     * Gets the number of times the log was forced to disk
+     * @return long - fsync count
+     */
+    public long getSyncCount() {
+        return syncs;
+    }
+
+
+    /**
+     * Gets the segment file being appended to
+     * @return Path - log file
+     */
+    public Path getFile() {
+        return segmentFile(directory, siteId, segment);
+    }
+
+
+    /**
+     * Gets the file of a log segment
+     * @param directory - directory holding the site's logs
+     * @param siteId - site ID
+     * @param segment - segment number
+     * @return Path - segment file
+     */
+    public static Path segmentFile(Path directory, int siteId, long segment) {
+        return directory.resolve("site-" + siteId + "." + segment + ".wal");
+    }
+
+
+    /**
+     * Lists the numbers of the files a site has in a directory with a given
+     * extension, e.g. its log segments or checkpoints
+     * @param directory - directory holding the site's files
+     * @param siteId - site ID
+     * @param extension - file extension including the dot
+     * @return ArrayList - numbers in ascending order
+     */
+    public static ArrayList<Long> listNumbered(Path directory, int siteId, String extension) throws IOException {
+        ArrayList<Long> numbers = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return numbers;
+        }
+
+        String prefix = "site-" + siteId + ".";
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + extension)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.length() <= prefix.length() + extension.length()) {
+                    continue;
+                }
+                try {
+                    numbers.add(Long.parseLong(name.substring(prefix.length(), name.length() - extension.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+
+    /**
+     * Deletes the log segments before a segment
+     * @param directory - directory holding the site's logs
+     * @param siteId - site ID
+     * @param segment - first segment to keep
+     */
+    public static void deleteSegmentsBefore(Path directory, int siteId, long segment) throws IOException {
+        for (long old : listNumbered(directory, siteId, ".wal")) {
+            if (old < segment) {
+                Files.deleteIfExists(segmentFile(directory, siteId, old));
+            }
+        }
+    }
+
+
+    /**
+     * Syncs and closes the log
+     */
+    public void close() throws IOException {
+        if (channel.isOpen()) {
+            try {
+                sync();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+
+    /**
+     * Reads every whole record of a log segment in order.  A missing file has no
+     * records and a torn record at the end is ignored
+     * @param file - log file
+     * @param replay - receives each record
+     * @return long - number of records read
+     */
+    public static long replay(Path file, Replay replay) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return 0;
+            }
+            checkHeader(channel, file);
+            channel.position(HEADER_SIZE);
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE / RECORD_SIZE * RECORD_SIZE);
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    byte type = buffer.get();
+                    int varId = buffer.getInt();
+                    int value = buffer.getInt();
+                    int time = buffer.getInt();
+                    replay.record(type, varId, value, time);
+                    count++;
+                }
+                buffer.compact();
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * Checks that a file starts with the log header
+     * @param channel - open channel on the file
+     * @param file - log file, for the error message
+     */
+    private static void checkHeader(FileChannel channel, Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                break;
+            }
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+            throw new IOException("Not a site log: " + file);
+        }
+    }
+}
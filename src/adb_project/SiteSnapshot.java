@@ -0,0 +1,334 @@
+/**
+ * <h1>SiteSnapshot</h1>
+ * Checkpoint of a site's committed variables and version chains, written
+ * to site-&lt;id&gt;.&lt;segment&gt;.snap.  A checkpoint covers every log
+ * segment before its own number, so recovery loads the newest checkpoint
+ * and only replays the segments from there on.
+ * <p>
+ * Only the variables changed since the last checkpoint are copied when a
+ * checkpoint is taken.  They are merged with the previous checkpoint file
+ * in the background, so processing keeps going while the file is written.
+ * A checkpoint is written to a temporary file, synced and then renamed,
+ * so a crash never leaves a partial one behind.
+ */
+
+package adb_project;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+
+
+public class SiteSnapshot {
+
+    private static final int MAGIC = 0x41444243;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Variable IDs start at 1 so 0 ends the list of variables
+    private static final int END = 0;
+
+    private long segment;
+    private long base;
+    private int time;
+    private boolean failed;
+    private BitSet unreadable;
+    private ArrayList<Variable> variables;
+
+
+    /**
+     * Creates a checkpoint
+     * @param segment - first log segment the checkpoint does not cover
+     * @param base - segment of the checkpoint the variables are merged into, -1 if
+     *               the variables are all of the site's committed variables
+     * @param time - time of the newest record covered
+     * @param failed - whether the site was down
+     * @param unreadable - variables that can't be read since the site recovered
+     * @param variables - copies of the variables in ID order
+     */
+    public SiteSnapshot(long segment, long base, int time, boolean failed, BitSet unreadable,
+                        ArrayList<Variable> variables) {
+        this.segment = segment;
+        this.base = base;
+        this.time = time;
+        this.failed = failed;
+        this.unreadable = unreadable;
+        this.variables = variables;
+    }
+
+
+    /**
+     * Gets the first log segment the checkpoint does not cover
+     * @return long - segment number
+     */
+    public long getSegment() {
+        return segment;
+    }
+
+
+    /**
+     * Gets the time of the newest record covered
+     * @return int - time
+     */
+    public int getTime() {
+        return time;
+    }
+
+
+    /**
+     * Checks whether the site was down at the checkpoint
+     * @return Boolean - true/false whether the site was down
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+
+    /**
+     * Gets the variables that can't be read since the site recovered
+     * @return BitSet - unreadable variable IDs
+     */
+    public BitSet getUnreadable() {
+        return unreadable;
+    }
+
+
+    /**
+     * Gets the variables in the checkpoint
+     * @return ArrayList - variables in ID order
+     */
+    public ArrayList<Variable> getVariables() {
+        return variables;
+    }
+
+
+    /**
+     * Gets the file of a checkpoint
+     * @param directory - directory holding the site's logs
+     * @param siteId - site ID
+     * @param segment - first log segment the checkpoint does not cover
+     * @return Path - checkpoint file
+     */
+    public static Path file(Path directory, int siteId, long segment) {
+        return directory.resolve("site-" + siteId + "." + segment + ".snap");
+    }
+
+
+    /**
+     * Writes the checkpoint, merging its variables into the base checkpoint
+     * @param directory - directory holding the site's logs
+     * @param siteId - site ID
+     */
+    public void write(Path directory, int siteId) throws IOException {
+        Path target = file(directory, siteId, segment);
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+
+        try (FileOutputStream file = new FileOutputStream(temp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, BUFFER_SIZE))) {
+            writeHeader(out);
+
+            if (base < 0) {
+                for (Variable variable : variables) {
+                    writeVariable(out, variable);
+                }
+            } else {
+                try (DataInputStream in = open(file(directory, siteId, base))) {
+                    readHeader(in);
+                    merge(in, out);
+                }
+            }
+            out.writeInt(END);
+            out.flush();
+            file.getChannel().force(true);
+        }
+
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(directory);
+    }
+
+
+    /**
+     * Merges the variables of the base checkpoint with the changed ones.  Both are
+     * in ID order and a changed variable replaces the one in the base
+     * @param in - base checkpoint positioned after its header
+     * @param out - new checkpoint
+     */
+    private void merge(DataInputStream in, DataOutputStream out) throws IOException {
+        int next = 0;
+        int id = in.readInt();
+
+        while (id != END || next < variables.size()) {
+            Variable changed = (next < variables.size()) ? variables.get(next) : null;
+
+            if (changed != null && (id == END || changed.getIndex() <= id)) {
+                writeVariable(out, changed);
+                next++;
+                if (id != END && changed.getIndex() == id) {
+                    skipVariable(in);
+                    id = in.readInt();
+                }
+            } else {
+                copyVariable(in, out, id);
+                id = in.readInt();
+            }
+        }
+    }
+
+
+    /**
+     * Reads a checkpoint file
+     * @param file - checkpoint file
+     * @return SiteSnapshot - checkpoint with all of its variables
+     */
+    public static SiteSnapshot read(Path file) throws IOException {
+        try (DataInputStream in = open(file)) {
+            SiteSnapshot snapshot = readHeader(in);
+            for (int id = in.readInt(); id != END; id = in.readInt()) {
+                int value = in.readInt();
+                int count = in.readInt();
+                int[] times = new int[count];
+                int[] values = new int[count];
+                for (int i = 0; i < count; i++) {
+                    times[i] = in.readInt();
+                    values[i] = in.readInt();
+                }
+                snapshot.variables.add(Variable.restore(id, value, times, values, count));
+            }
+            return snapshot;
+        }
+    }
+
+
+    /**
+     * Deletes the checkpoints before a segment
+     * @param directory - directory holding the site's logs
+     * @param siteId - site ID
+     * @param segment - first checkpoint to keep
+     */
+    public static void deleteBefore(Path directory, int siteId, long segment) throws IOException {
+        for (long old : SiteLog.listNumbered(directory, siteId, ".snap")) {
+            if (old < segment) {
+                Files.deleteIfExists(file(directory, siteId, old));
+            }
+        }
+    }
+
+
+    /**
+     * Opens a checkpoint file for reading
+     * @param file - checkpoint file
+     * @return DataInputStream - buffered stream over the file
+     */
+    private static DataInputStream open(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+    }
+
+
+    /**
+     * Writes the checkpoint header
+     * @param out - checkpoint file
+     */
+    private void writeHeader(DataOutputStream out) throws IOException {
+        long[] words = unreadable.toLongArray();
+        out.writeInt(MAGIC);
+        out.writeLong(segment);
+        out.writeInt(time);
+        out.writeBoolean(failed);
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+
+    /**
+     * Reads a checkpoint header
+     * @param in - checkpoint file
+     * @return SiteSnapshot - checkpoint with no variables yet
+     */
+    private static SiteSnapshot readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a site checkpoint");
+        }
+
+        long segment = in.readLong();
+        int time = in.readInt();
+        boolean failed = in.readBoolean();
+        long[] words = new long[in.readInt()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+        return new SiteSnapshot(segment, -1, time, failed, BitSet.valueOf(words), new ArrayList<>());
+    }
+
+
+    /**
+     * Writes a variable - its ID, value and version chain
+     * @param out - checkpoint file
+     * @param variable - variable
+     */
+    private static void writeVariable(DataOutputStream out, Variable variable) throws IOException {
+        int count = variable.getVersionCount();
+        out.writeInt(variable.getIndex());
+        out.writeInt(variable.getValue());
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeInt(variable.getVersionTime(i));
+            out.writeInt(variable.getVersionValue(i));
+        }
+    }
+
+
+    /**
+     * Copies a variable from one checkpoint to another without decoding it
+     * @param in - base checkpoint positioned after the variable's ID
+     * @param out - new checkpoint
+     * @param id - variable ID
+     */
+    private static void copyVariable(DataInputStream in, DataOutputStream out, int id) throws IOException {
+        out.writeInt(id);
+        out.writeInt(in.readInt());
+        int count = in.readInt();
+        out.writeInt(count);
+        for (int i = 0; i < 2 * count; i++) {
+            out.writeInt(in.readInt());
+        }
+    }
+
+
+    /**
+     * Skips a variable in a checkpoint
+     * @param in - checkpoint positioned after the variable's ID
+     */
+    private static void skipVariable(DataInputStream in) throws IOException {
+        in.readInt();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            in.readLong();
+        }
+    }
+
+
+    /**
+     * Syncs a directory so a rename in it survives a crash.  Not every
+     * platform can open a directory, and there it is left to the OS
+     * @param directory - directory
+     */
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported on this platform
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * <h1>SiteWorkers</h1>
+ * Single threaded workers that run site operations off the caller's
+ * thread.  Every site is owned by exactly one worker and a worker runs
+ * the messages for its sites one at a time in the order they were
+ * sent, so site state is never touched by two threads at once.  Sites
+ * are spread over a fixed number of workers so a replicated operation
+ * scales with the cores available rather than with the replica count.
+ * <p>
+ * The workers are single threaded executors from java.util.concurrent,
+ * so they run on the Java 8 the build targets.  Java 8 has no virtual
+ * threads, which is why sites share a bounded pool instead of getting a
+ * thread each.
+ */
+
+package adb_project;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+
+public class SiteWorkers {
+
+    private ExecutorService[] workers;
+
+
+    /**
+     * Starts the workers
+     * @param threads - number of worker threads, site i is owned by worker i % threads
+     */
+    public SiteWorkers(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one worker thread");
+        }
+
+        this.workers = new ExecutorService[threads];
+        for (int i = 0; i < threads; i++) {
+            int worker = i;
+            workers[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "site-worker-" + worker);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+
+    /**
+     * Sends an operation to each of the given sites and waits for all of
+     * them.  The sites owned by one worker are sent as a single message.
+     * Results come back in the same order as the sites so callers see the
+     * same thing they would from a serial loop
+     * @param sites - sites to run the operation on
+     * @param operation - operation run against a single site
+     * @return ArrayList - result for each site, in site order
+     */
+    public <R> ArrayList<R> runOnSites(List<Site> sites, Function<Site, R> operation) {
+        int count = sites.size();
+        Object[] results = new Object[count];
+
+        if (count == 1) {
+            results[0] = call(sites.get(0), operation);
+        } else {
+            ArrayList<Future<?>> pending = new ArrayList<>(workers.length);
+            for (int w = 0; w < workers.length; w++) {
+                int worker = w;
+                pending.add(workers[w].submit(() -> {
+                    for (int i = 0; i < count; i++) {
+                        if (owner(sites.get(i)) == worker) {
+                            results[i] = operation.apply(sites.get(i));
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : pending) {
+                join(future);
+            }
+        }
+
+        ArrayList<R> ordered = new ArrayList<>(count);
+        for (Object result : results) {
+            @SuppressWarnings("unchecked")
+            R r = (R) result;
+            ordered.add(r);
+        }
+        return ordered;
+    }
+
+
+    /**
+     * Sends an operation to the worker owning a site and waits for it
+     * @param site - site to run the operation on
+     * @param operation - operation run against the site
+     * @return R - result of the operation
+     */
+    private <R> R call(Site site, Function<Site, R> operation) {
+        return join(workers[owner(site)].submit(() -> operation.apply(site)));
+    }
+
+
+    /**
+     * Worker that owns a site
+     * @param site - site object
+     * @return int - worker index
+     */
+    private int owner(Site site) {
+        return (site.getId() - 1) % workers.length;
+    }
+
+
+    /**
+     * Waits for a message to finish, rethrowing anything the site threw
+     * @param future - pending result
+     * @return R - result
+     */
+    private static <R> R join(Future<R> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a site worker", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+
+    /**
+     * Stops the workers once the messages already sent are done
+     */
+    public void shutdown() {
+        for (ExecutorService worker : workers) {
+            worker.shutdown();
+        }
+    }
+}
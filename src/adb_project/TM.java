@@ -11,32 +11,276 @@
 
 package adb_project;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.Set;
+import java.util.Iterator;
+
+import javax.management.JMException;
 
 
 public class TM {
 
-    private ArrayList<Instruction> instructions;
+    private Iterator<Instruction> instructions;
+    private InstructionHandler[] handlers;
+    private Topology topology;
+    private int siteThreads;
     private HashMap<Integer, Transaction> transactionList;
-    private static HashMap<String, Queue<Transaction>> lockQueue;
-    private static HashMap<Integer, Queue<Transaction>> waitQueue;
-    private static int time = 0;
+    private HashMap<Integer, WaitQueue> lockQueue;
+    private HashMap<Integer, WaitQueue> waitQueue;
+    private ArrayDeque<Transaction> readOnlyTransactions;
+    private int time;
+    private PrintStream out;
+    private EngineListener listener;
+    private EngineListener events;
+    private Path logDirectory;
+    private int logSyncEvery;
+    private int logSyncDelay;
+    private int checkpointEvery;
+    private int catchUpBatch;
+    private ReplicaRouter.Policy replicaPolicy;
+    private DeadlockPolicy deadlockPolicy;
+    private int deadlockCheckEvery;
+    private RetryScheduler retries;
+    private EngineMetrics metrics;
+    private Path metricsFile;
+    private long metricsPeriod;
+    private String metricsMBean;
 
     /**
      * Creates a Task Manager Object.  Holds the instructions,
-     * transaction list, variable lock queues and site wait queues
+     * transaction list, variable lock queues, site wait queues and the
+     * read-only transactions in start time order
      * @param instructions - An ArrayList of instruction objects
      */
     public TM(ArrayList<Instruction> instructions) {
+        this(instructions.iterator());
+    }
+
+
+    /**
+     * Creates a Task Manager Object that executes instructions as the
+     * iterator produces them, e.g. from Parser.streamInstructions
+     * @param instructions - An iterator of instruction objects
+     */
+    public TM(Iterator<Instruction> instructions) {
+        this(instructions, Topology.DEFAULT);
+    }
+
+
+    /**
+     * Creates a Task Manager Object for a database with the given topology
+     * @param instructions - An iterator of instruction objects
+     * @param topology - number of sites and variables and where variables live
+     */
+    public TM(Iterator<Instruction> instructions, Topology topology) {
+        this(instructions, topology, 0);
+    }
+
+
+    /**
+     * Creates a Task Manager Object whose Data Manager runs site operations
+     * on worker threads
+     * @param instructions - An iterator of instruction objects
+     * @param topology - number of sites and variables and where variables live
+     * @param siteThreads - number of site worker threads, 0 to run everything serially
+     */
+    public TM(Iterator<Instruction> instructions, Topology topology, int siteThreads) {
         this.instructions = instructions;
+        this.topology = topology;
+        this.siteThreads = siteThreads;
+        this.out = System.out;
+        this.replicaPolicy = ReplicaRouter.Policy.ROUND_ROBIN;
+        this.deadlockPolicy = DeadlockPolicy.DETECT;
+        this.metrics = new EngineMetrics();
+        this.handlers = initializeHandlers();
         transactionList = new HashMap<>();
         lockQueue = new HashMap<>();
         waitQueue = new HashMap<>();
+        readOnlyTransactions = new ArrayDeque<>();
+        time = 0;
+    }
+
+
+    /**
+     * Sets where the output of this Task Manager and its Data Manager goes
+     * when no event listener is set.  Defaults to System.out
+     * @param out - output stream
+     */
+    public void setOutput(PrintStream out) {
+        this.out = out;
+    }
+
+
+    /**
+     * Gets where output goes
+     * @return PrintStream - output stream
+     */
+    public PrintStream getOutput() {
+        return out;
+    }
+
+
+    /**
+     * Sends reads, commits, aborts and dumps to a listener instead of writing
+     * them to the output.  The listener is flushed when processing ends but is
+     * not closed, so it can be shared between runs
+     * @param listener - event listener, null to write text to the output
+     */
+    public void setEventListener(EngineListener listener) {
+        this.listener = listener;
+        this.events = null;
+    }
+
+
+    /**
+     * Gets the listener events are reported to.  While instructions are processed
+     * without a listener set, this is a sink writing text to the output on a
+     * background thread.  Otherwise it is the listener set, or a buffered text
+     * sink on the output that is flushed when the Data Manager shuts down
+     * @return EngineListener - event listener
+     */
+    public EngineListener getEventListener() {
+        if(events == null) {
+            events = (listener != null) ? listener : new TextEventSink(out);
+        }
+        return events;
+    }
+
+
+    /**
+     * Makes the sites durable.  Each site appends its commits to a write-ahead
+     * log in the directory, and logs left by an earlier run are replayed before
+     * the first instruction, with time carrying on from the newest record.
+     * Commits are group committed, waiting at most GroupCommit.DEFAULT_MAX_DELAY
+     * ticks for their batch
+     * @param directory - directory for the site logs, null to keep sites in memory only
+     * @param syncEvery - transactions per fsync batch, 0 for asynchronous commit
+     */
+    public void setLogDirectory(Path directory, int syncEvery) {
+        setLogDirectory(directory, syncEvery, GroupCommit.DEFAULT_MAX_DELAY);
+    }
+
+
+    /**
+     * Makes the sites durable, see setLogDirectory(Path, int).  A transaction
+     * is reported as committed once its batch of commits is synced, which
+     * happens when the batch is full or its oldest commit has waited syncDelay
+     * ticks.  With syncEvery 0 commits are reported as soon as they are
+     * written to the OS, before they are on disk (asynchronous commit)
+     * @param directory - directory for the site logs, null to keep sites in memory only
+     * @param syncEvery - transactions per fsync batch, 0 for asynchronous commit
+     * @param syncDelay - ticks a commit waits at most for its batch to fill
+     */
+    public void setLogDirectory(Path directory, int syncEvery, int syncDelay) {
+        this.logDirectory = directory;
+        this.logSyncEvery = syncEvery;
+        this.logSyncDelay = syncDelay;
+    }
+
+
+    /**
+     * Has each durable site checkpoint its state once its current log segment
+     * holds a number of records.  Older segments are deleted once a checkpoint
+     * is written, so recovery only replays what came after it
+     * @param records - log records per checkpoint, 0 for no checkpoints
+     */
+    public void setCheckpointEvery(int records) {
+        this.checkpointEvery = records;
+    }
+
+
+    /**
+     * Has recovered sites copy their replicated variables from sites that can
+     * be read, a batch after every instruction, so they can serve reads again
+     * without waiting for each variable to be written
+     * @param batchSize - most variables looked at per instruction, 0 to only
+     *                    catch up through writes
+     */
+    public void setCatchUpBatch(int batchSize) {
+        this.catchUpBatch = batchSize;
+    }
+
+
+    /**
+     * Sets how read-only transactions pick the replica of a replicated
+     * variable they read from.  Defaults to round robin
+     * @param policy - replica policy
+     */
+    public void setReplicaPolicy(ReplicaRouter.Policy policy) {
+        this.replicaPolicy = policy;
+    }
+
+
+    /**
+     * Sets how deadlocks are dealt with - detected after the fact in the
+     * waits-for graph, or prevented at conflict time by wait-die or
+     * wound-wait.  Defaults to detection
+     * @param policy - deadlock policy
+     */
+    public void setDeadlockPolicy(DeadlockPolicy policy) {
+        this.deadlockPolicy = policy;
+    }
+
+
+    /**
+     * Sets how often the waits-for graph is searched for deadlocks.  With 0,
+     * the default, the edges added by each read or write are checked right
+     * after it.  Otherwise every deadlock is found and broken in one pass
+     * every so many instructions, before a transaction ends and once more
+     * after the last instruction
+     * @param ticks - instructions between deadlock passes, 0 to check after each read and write
+     */
+    public void setDeadlockCheckEvery(int ticks) {
+        this.deadlockCheckEvery = ticks;
+    }
+
+
+    /**
+     * Restarts aborted transactions instead of dropping their remaining
+     * instructions.  An aborted transaction is begun again with a fresh start
+     * time once it has backed off, and everything it was sent so far is
+     * replayed.  Off by default
+     * @param maxRetries - times a transaction is restarted before it is given up on, 0 for none
+     * @param backoff - instructions to wait before the first restart, doubled for each one after
+     */
+    public void setRetries(int maxRetries, int backoff) {
+        this.retries = (maxRetries > 0) ? new RetryScheduler(maxRetries, backoff) : null;
+    }
+
+
+    /**
+     * Gets the metrics this Task Manager and its Data Manager keep
+     * @return EngineMetrics - metrics
+     */
+    public EngineMetrics getMetrics() {
+        return metrics;
+    }
+
+
+    /**
+     * Writes the metrics to a file in the Prometheus text format while
+     * instructions are processed, and once more when processing ends
+     * @param file - file the metrics are written to, null for none
+     * @param periodMillis - time between dumps in milliseconds
+     */
+    public void setMetricsFile(Path file, long periodMillis) {
+        this.metricsFile = file;
+        this.metricsPeriod = periodMillis;
+    }
+
+
+    /**
+     * Registers the metrics with the platform MBean server while instructions
+     * are processed, as adb_project:type=Metrics,name=&lt;name&gt;
+     * @param name - MBean name, unique in the JVM, null for none
+     */
+    public void setMetricsMBean(String name) {
+        this.metricsMBean = name;
     }
 
 
@@ -50,6 +294,10 @@ public class TM {
     private void addTransaction(Integer id, Boolean readOnly, int startTime, Instruction I) {
         Transaction T = new Transaction(id, readOnly, startTime, I);
         addToTransactionList(id, T);
+
+        if(readOnly) {
+            readOnlyTransactions.add(T);
+        }
     }
 
 
@@ -85,114 +333,300 @@ public class TM {
      * Gets the current time during processing
      * @return int - time
      */
-    public static int getTime() {
+    public int getTime() {
         return time;
     }
 
 
+    /**
+     * Gets the low-water mark for variable version garbage collection.  This is
+     * the start time of the oldest read-only transaction still running, or the
+     * current time if there is none.  Read-only transactions begin in time order
+     * so finished ones are only dropped from the head of the queue.
+     * @return int - low-water mark
+     */
+    public int getLowWaterMark() {
+        while(!readOnlyTransactions.isEmpty() && !readOnlyTransactions.peek().isRunning()) {
+            readOnlyTransactions.remove();
+        }
+
+        return readOnlyTransactions.isEmpty() ? time : readOnlyTransactions.peek().getStartTime();
+    }
+
+
     /**
      * Takes each instruction and hands off to the Data Manager where
-     * applicable otherwise executed by the Task Manager
+     * applicable otherwise executed by the Task Manager.  Instructions
+     * are dispatched through the handler table by opcode
      */
     public void processInstructions() {
-        ArrayList<Instruction> instructions = this.instructions;
-        DM dm = new DM();
-
-        for(Instruction instruction : instructions) {
-            setTime();
-            String instruction_type = instruction.getInstruction();
-            Integer id;
-            Transaction transaction;
+        Iterator<Instruction> instructions = this.instructions;
+        InstructionHandler[] handlers = this.handlers;
+        EngineMetrics metrics = this.metrics;
+        AsyncEventSink sink = (listener == null) ? new AsyncEventSink(new TextEventSink(out)) : null;
+        events = (sink != null) ? sink : listener;
+        GroupCommit groupCommit = null;
+        if(logDirectory != null && logSyncEvery > 0) {
+            groupCommit = new GroupCommit(events, metrics, this::getTime, logSyncEvery, logSyncDelay);
+            events = groupCommit;
+        }
+        DM dm = new DM(this, topology, siteThreads);
+        if(groupCommit != null) {
+            dm.setGroupCommit(groupCommit);
+        }
+        dm.setReplicaPolicy(replicaPolicy);
+        dm.setDeadlockPolicy(deadlockPolicy);
+        MetricsExporter exporter = null;
+        metrics.startClock();
+
+        try {
+            if(metricsMBean != null) {
+                metrics.getRegistry().registerMBean(metricsMBean);
+            }
+            if(metricsFile != null) {
+                exporter = new MetricsExporter(metrics.getRegistry(), metricsFile, metricsPeriod);
+            }
+            if(logDirectory != null) {
+                time = Math.max(time, dm.openLogs(logDirectory, checkpointEvery));
+            }
+            if(catchUpBatch > 0) {
+                dm.startCatchUp(catchUpBatch);
+            }
 
-            // Since the instruction list may have instructions for terminated
-            // transactions, a check is added to continue if one is found
-            switch (instruction_type) {
+            while(instructions.hasNext()) {
+                Instruction instruction = instructions.next();
+                setTime();
+                metrics.operation(instruction.getOpcode());
+                if(retries != null) {
+                    runRetries(dm);
+                    if(retries.record(instruction)) {
+                        continue;
+                    }
+                }
+                handlers[instruction.getOpcode()].handle(dm, instruction);
+                if(deadlockCheckEvery > 0 && time % deadlockCheckEvery == 0) {
+                    dm.detectDeadlocks();
+                }
+                dm.catchUp();
+                dm.syncCommits();
+            }
+            if(deadlockCheckEvery > 0) {
+                dm.detectDeadlocks();
+            }
 
-                case "begin":
-                    begin(instruction);
+            // Restarts still backing off or replaying when the input runs out.  Stops
+            // once the replays left are all stuck waiting and nothing is scheduled
+            while(retries != null && (retries.hasScheduled() || retries.isReplaying())) {
+                time = retries.hasScheduled() ? Math.max(time + 1, retries.nextDue()) : time + 1;
+                boolean progress = runRetries(dm);
+                if(deadlockCheckEvery > 0) {
+                    dm.detectDeadlocks();
+                }
+                dm.catchUp();
+                dm.syncCommits();
+                if(!progress && !retries.hasScheduled()) {
                     break;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register metrics MBean " + metricsMBean, e);
+        } finally {
+            try {
+                metrics.stopClock();
+                dm.shutdown();
+            } finally {
+                events = null;
+                if(sink != null) {
+                    sink.close();
+                }
+                stopMetrics(exporter);
+            }
+        }
+    }
 
-                case "beginRO":
-                    begin(instruction);
-                    break;
 
-                case "W":
-                    id = instruction.getId();
-                    transaction = this.getTransaction(id);
+    /**
+     * Moves the retries along by a tick - replays that were waiting carry on
+     * and transactions whose backoff is over are restarted
+     * @param dm - data manager
+     * @return Boolean - true/false whether any instruction was replayed
+     */
+    private boolean runRetries(DM dm) {
+        boolean progress = false;
 
-                    // Instructions may still come for a transaction that is no longer
-                    // runnning due to abort
-                    if(!transaction.isRunning()) {
-                        continue;
-                    }
+        for(int id : retries.getReplaying()) {
+            progress |= replay(dm, id);
+        }
 
-                    transaction.addCurrentInstruction(instruction);
-                    if(transaction.isRunning())
-                        dm.write(transaction, instruction);
+        int id;
+        while((id = retries.pollDue(time)) != 0) {
+            events.restarted(id, retries.getRetries(id));
+            metrics.retried();
+            progress |= replay(dm, id);
+        }
+        return progress;
+    }
 
-                    dm.deadLockCheck(transaction);
 
-                    break;
+    /**
+     * Replays a restarted transaction's instructions until it has to wait,
+     * is aborted again or has caught up with the input
+     * @param dm - data manager
+     * @param id - transaction ID
+     * @return Boolean - true/false whether any instruction was replayed
+     */
+    private boolean replay(DM dm, int id) {
+        boolean progress = false;
+        Transaction T = getTransaction(id);
+        Instruction I;
+
+        while(!(T.isRunning() && T.isQueued()) && (I = retries.nextReplayed(id)) != null) {
+            if(I.getOpcode() == Instruction.END) {
+                retries.ended(id);
+            }
+            metrics.operation(I.getOpcode());
+            handlers[I.getOpcode()].handle(dm, I);
+            T = getTransaction(id);
+            progress = true;
+        }
+        return progress;
+    }
 
-                case "R":
-                    id = instruction.getId();
-                    transaction = this.getTransaction(id);
 
-                    // Instructions may still come for a transaction that is no longer
-                    // runnning due to abort
-                    if(!transaction.isRunning()) {
-                        continue;
-                    }
+    /**
+     * Hands an aborted transaction to the retry scheduler.  Only the current
+     * attempt of a running transaction is retried
+     * @param T - transaction being aborted, still running
+     */
+    private void scheduleRetry(Transaction T) {
+        if(retries == null || !T.isRunning() || getTransaction(T.getID()) != T) {
+            return;
+        }
+        if(!retries.aborted(T, time)) {
+            metrics.retriesGivenUp();
+        }
+    }
 
-                    transaction.addCurrentInstruction(instruction);
 
-                    if(!dm.hasWriteLock(transaction, instruction)) {
-                        if (!transaction.isReadOnly())
-                            dm.read(transaction, instruction);
-                        else
-                            dm.read(transaction, instruction);
-                    }
+    /**
+     * Takes the metrics off the MBean server and writes the final dump
+     * @param exporter - metrics file exporter, null if there is none
+     */
+    private void stopMetrics(MetricsExporter exporter) {
+        metrics.getRegistry().unregisterMBean();
+        if(exporter != null) {
+            try {
+                exporter.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
 
-                    dm.deadLockCheck(transaction);
 
-                    break;
+    /**
+     * Builds the dispatch table with a handler for each opcode
+     * @return InstructionHandler[] - handlers indexed by opcode
+     */
+    private InstructionHandler[] initializeHandlers() {
+        InstructionHandler[] temp = new InstructionHandler[Instruction.OPCODE_COUNT];
+
+        temp[Instruction.BEGIN] = (dm, I) -> begin(I);
+        temp[Instruction.BEGIN_RO] = (dm, I) -> begin(I);
+        temp[Instruction.WRITE] = this::write;
+        temp[Instruction.READ] = this::read;
+        temp[Instruction.END] = this::end;
+        temp[Instruction.FAIL] = (dm, I) -> {
+            failSite(I.getId());
+            dm.fail(I);
+        };
+        temp[Instruction.RECOVER] = (dm, I) -> dm.recover(I);
+        temp[Instruction.DUMP] = (dm, I) -> dm.dump();
+        temp[Instruction.DUMP_VARIABLE] = (dm, I) -> dm.dumpVariable(I.getValue());
+        temp[Instruction.DUMP_SITE] = (dm, I) -> dm.dump(I.getValue());
+
+        return temp;
+    }
 
-                case "fail":
-                    id = instruction.getId();
-                    failSite(id);
-                    dm.fail(instruction);
-                    break;
 
-                case "recover":
-                    dm.recover(instruction);
-                    break;
+    /**
+     * Hands a write to the Data Manager.  Instructions may still come for a
+     * transaction that is no longer runnning due to abort so those are skipped
+     * @param dm - data manager
+     * @param instruction - write instruction
+     */
+    private void write(DM dm, Instruction instruction) {
+        Transaction transaction = this.getTransaction(instruction.getId());
 
-                case "dump":
-                    dm.dump();
-                    break;
+        if(!transaction.isRunning()) {
+            return;
+        }
 
-                case "dumpx":
-                    dm.dump("x" + instruction.getValue().toString());
-                    break;
+        transaction.addCurrentInstruction(instruction);
+        transaction.countOperation();
+        dm.write(transaction, instruction);
+        if(deadlockCheckEvery == 0) {
+            dm.deadLockCheck(transaction);
+        }
+    }
 
-                case "dumpi":
-                    dm.dump(instruction.getValue());
-                    break;
 
-                case "end":
-                    id = instruction.getId();
-                    transaction = this.getTransaction(id);
+    /**
+     * Hands a read to the Data Manager unless the transaction already has the
+     * value from its own write lock.  Skipped if the transaction is no longer running
+     * @param dm - data manager
+     * @param instruction - read instruction
+     */
+    private void read(DM dm, Instruction instruction) {
+        Transaction transaction = this.getTransaction(instruction.getId());
 
-                    // Instructions may still come for a transaction that is no longer
-                    // runnning due to abort
-                    if(!transaction.isRunning()) {
-                        continue;
-                    }
+        if(!transaction.isRunning()) {
+            return;
+        }
 
-                    dm.end(this.getTransaction(id));
-                    break;
+        transaction.addCurrentInstruction(instruction);
+        transaction.countOperation();
+
+        if(!dm.hasWriteLock(transaction, instruction)) {
+            dm.read(transaction, instruction);
+        }
+
+        if(deadlockCheckEvery == 0) {
+            dm.deadLockCheck(transaction);
+        }
+    }
+
+
+    /**
+     * Hands a transaction end to the Data Manager.  Skipped if the transaction
+     * is no longer running
+     * @param dm - data manager
+     * @param instruction - end instruction
+     */
+    private void end(DM dm, Instruction instruction) {
+        Transaction transaction = this.getTransaction(instruction.getId());
+
+        if(!transaction.isRunning()) {
+            return;
+        }
+
+        // A transaction blocked on a deadlock nobody has looked for yet must not commit
+        if(deadlockCheckEvery > 0 && dm.isWaiting(transaction)) {
+            dm.detectDeadlocks();
+            if(!transaction.isRunning()) {
+                return;
             }
         }
+
+        // A transaction ending while still queued would otherwise be handed the lock
+        // later and never let go of it, stalling the restarted transactions behind it
+        if(retries != null && transaction.isQueued()) {
+            WaitQueue.removeAll(transaction);
+        }
+
+        dm.end(transaction);
     }
 
 
@@ -204,28 +638,24 @@ public class TM {
 
         int startTime = getTime();
         Integer transaction = I.getId();
-        Boolean readOnly = I.getInstruction().contains("RO");
+        Boolean readOnly = I.getOpcode() == Instruction.BEGIN_RO;
 
         addTransaction(transaction, readOnly, startTime, I);
     }
 
 
     /**
-     * Gets a transaction from the wait queue if there is one waiting
+     * Gets a site's wait queue
      * @param siteId - site ID
-     * @return Transaction - a transaction object
+     * @return WaitQueue - transactions waiting on the site or null if none have
      */
-    public static Queue<Transaction> getWaitQueue(Integer siteId) {
+    public WaitQueue getWaitQueue(Integer siteId) {
         return waitQueue.get(siteId);
     }
 
 
-    public static Boolean checkWaitQueue(Integer siteId) {
-        if(waitQueue.get(siteId) == null || waitQueue.get(siteId).size() == 0) {
-            return false;
-        } else {
-            return true;
-        }
+    public Boolean checkWaitQueue(Integer siteId) {
+        return waitQueue.get(siteId) != null && !waitQueue.get(siteId).isEmpty();
     }
 
 
@@ -234,14 +664,8 @@ public class TM {
      * @param siteId - site ID
      * @param T - a transaction object
      */
-    public static void addToWaitQueue(Integer siteId, Transaction T) {
-        if(waitQueue.get(siteId) == null) {
-            Queue<Transaction> queue = new LinkedList<>();
-            queue.add(T);
-            waitQueue.put(siteId, queue);
-        } else {
-            waitQueue.get(siteId).add(T);
-        }
+    public void addToWaitQueue(Integer siteId, Transaction T) {
+        waitQueue.computeIfAbsent(siteId, k -> new WaitQueue(metrics.getWaitQueueDepth())).add(T);
     }
 
 
@@ -251,14 +675,9 @@ public class TM {
      * @param varId - variable id
      * @return T - transaction object if there is one on queue
      */
-    public static Transaction handleLockQueue(String varId) {
-        if(lockQueue.get(varId).size() == 0) {
-            return null;
-        } else {
-            Transaction T = lockQueue.get(varId).remove();
-            T.removeFromDependsOn(varId);
-            return T;
-        }
+    public Transaction handleLockQueue(int varId) {
+        WaitQueue queue = lockQueue.get(varId);
+        return (queue == null) ? null : queue.poll();
     }
 
 
@@ -267,60 +686,59 @@ public class TM {
      * a transaction object
      * @param varId - variable id
      * @param T - transaction object
+     * @param I - the read or write the transaction waits to run
      */
-    public static void addToLockQueue(String varId, Transaction T) {
-        if(lockQueue.get(varId) == null) {
-            Queue<Transaction> queue = new LinkedList<>();
-            queue.add(T);
-            lockQueue.put(varId, queue);
-        } else {
-            lockQueue.get(varId).add(T);
-        }
+    public void addToLockQueue(int varId, Transaction T, Instruction I) {
+        lockQueue.computeIfAbsent(varId, k -> new WaitQueue(metrics.getLockQueueDepth())).add(T, I);
+        metrics.lockQueued();
     }
 
 
     /**
-     * Gets the instruction at the start of the start of the queue.  This is to
-     * handle cases where an unlock a variable may have more than one transaction
-     * waiting to read lock it
+     * Adds a transaction to the front of a variable lock queue.  Used for
+     * read to write lock upgrades so they are granted before other waiters
      * @param varId - variable id
-     * @return String - instruction type
+     * @param T - transaction object
+     * @param I - the write the transaction waits to run
      */
-    public static String peekLockQueue(String varId) {
-        if(lockQueue.get(varId).peek() == null) {
-            return "N";
-        } else {
-            return lockQueue.get(varId).peek().getCurrentInstruction().getInstruction();
-        }
+    public void addToLockQueueFront(int varId, Transaction T, Instruction I) {
+        lockQueue.computeIfAbsent(varId, k -> new WaitQueue(metrics.getLockQueueDepth())).addFirst(T, I);
+        metrics.lockQueued();
     }
 
 
     /**
-     * Gets trasnsactions in lock queue for specific variable
+     * Gets the pending instruction at the start of a variable's lock queue.
+     * This is to handle cases where an unlock a variable may have more than
+     * one transaction waiting to read lock it
      * @param varId - variable id
-     * @return String - instruction type
-     */
-    public static Set<Transaction> getTransactionsFromLockQueue(String varId) {
-        if(lockQueue.get(varId) != null) {
-            Queue<Transaction> transactions = new LinkedList<>(lockQueue.get(varId));
-            Set<Transaction> transactionSet = new HashSet<>();
-            while (!transactions.isEmpty()) {
-                transactionSet.add(transactions.remove());
-            }
-            return transactionSet;
-        } else {
-            return null;
-        }
+     * @return Instruction - the head waiter's own read or write, null if the queue is empty
+     */
+    public Instruction peekLockQueue(int varId) {
+        WaitQueue queue = lockQueue.get(varId);
+        return (queue == null) ? null : queue.peekInstruction();
+    }
+
+
+    /**
+     * Gets the transactions in the lock queue for a variable.  The queue
+     * itself is returned, not a copy, so it must not be changed while
+     * iterating it
+     * @param varId - variable id
+     * @return WaitQueue - waiting transactions or null if none have waited
+     */
+    public WaitQueue getTransactionsFromLockQueue(int varId) {
+        return lockQueue.get(varId);
     }
 
 
     /**
      * Checks to see if a variable's lock queue is empty
-     * @param variableId - string id of a variable
+     * @param variableId - id of a variable
      * @return Boolean - true/false whether the queue is empty
      */
-    public static Boolean emptyLockQueue(String variableId) {
-        return (lockQueue.get(variableId) == null || lockQueue.get(variableId).size() == 0);
+    public Boolean emptyLockQueue(int variableId) {
+        return (lockQueue.get(variableId) == null || lockQueue.get(variableId).isEmpty());
     }
 
 
@@ -332,13 +750,11 @@ public class TM {
     private void failSite(Integer id) {
         for (HashMap.Entry<Integer, Transaction> entry : transactionList.entrySet())
         {
-            HashMap<Integer, Integer> sites = entry.getValue().getOnSites();
-            if(sites != null) {
-                if(sites.get(id) != null && sites.size() > 0 && sites.get(id) > 0) {
-                    entry.getValue().stopTransaction();
-                    System.out.println("T" + entry.getValue().getID() + " ABORTED because Site " +
-                            id.toString() + " has failed");
-                }
+            if(entry.getValue().getOnSites(id) > 0) {
+                scheduleRetry(entry.getValue());
+                entry.getValue().stopTransaction();
+                metrics.aborted(EngineListener.AbortReason.SITE_FAILURE);
+                events.aborted(entry.getValue().getID(), EngineListener.AbortReason.SITE_FAILURE, id);
             }
         }
     }
@@ -349,35 +765,12 @@ public class TM {
      * puts it into terminated state
      * @param T - transaction
      */
-    public static void abortTransaction(Transaction T) {
-
-        // Remove from variable lock queue
-        for(HashMap.Entry<String, Queue<Transaction>> locks : lockQueue.entrySet()) {
-            Queue<Transaction> newQueue = new LinkedList<>();
-            Queue<Transaction> oldQueue = locks.getValue();
-
-            while(!oldQueue.isEmpty()) {
-                Transaction queueT = oldQueue.remove();
-                if(queueT != T) {
-                    newQueue.add(queueT);
-                }
-            }
-            lockQueue.put(locks.getKey(), newQueue);
-        }
+    public void abortTransaction(Transaction T) {
 
-        // Remove from site wait queue
-        for(HashMap.Entry<Integer, Queue<Transaction>> locks : waitQueue.entrySet()) {
-            Queue<Transaction> newQueue = new LinkedList<>();
-            Queue<Transaction> oldQueue = locks.getValue();
+        scheduleRetry(T);
 
-            while(!oldQueue.isEmpty()) {
-                Transaction queueT = oldQueue.remove();
-                if(queueT != T) {
-                    newQueue.add(queueT);
-                }
-            }
-            waitQueue.put(locks.getKey(), newQueue);
-        }
+        // Remove from variable lock queues and site wait queues
+        WaitQueue.removeAll(T);
         T.stopTransaction();
     }
 }
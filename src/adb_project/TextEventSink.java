@@ -0,0 +1,155 @@
+/**
+ * <h1>TextEventSink</h1>
+ * Listener that writes events as the engine's text output, e.g.
+ * "T1 read x2: 20" or "T2 ABORTED because Site 3 has failed".  Lines
+ * go through a buffered writer and only reach the underlying stream
+ * when the buffer fills up or the sink is flushed.
+ */
+
+package adb_project;
+
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+
+public class TextEventSink implements EngineListener {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Writer out;
+
+
+    /**
+     * Creates a sink writing to a stream
+     * @param out - output stream, e.g. System.out
+     */
+    public TextEventSink(PrintStream out) {
+        this(new OutputStreamWriter(out, Charset.defaultCharset()));
+    }
+
+
+    /**
+     * Creates a sink writing to a writer
+     * @param out - writer, buffered here
+     */
+    public TextEventSink(Writer out) {
+        this.out = new BufferedWriter(out, BUFFER_SIZE);
+    }
+
+
+    public void read(int transaction, int varId, int value) {
+        try {
+            out.write("T" + transaction + " read x" + varId + ": " + value);
+            newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    public void committed(int transaction, int varId, int value, int siteId) {
+        try {
+            if (siteId == 0) {
+                out.write("T" + transaction + " committed x" + varId + " to all available sites : " + value);
+            } else {
+                out.write("T" + transaction + " committed x" + varId + " to Site " + siteId + ": " + value);
+            }
+            newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    public void aborted(int transaction, AbortReason reason, int cause) {
+        try {
+            switch (reason) {
+                case DEADLOCK:
+                    out.write("T" + transaction + " ABORTED due to attempted lock on variable x" + cause);
+                    break;
+                case SITE_FAILURE:
+                    out.write("T" + transaction + " ABORTED because Site " + cause + " has failed");
+                    break;
+                case WAIT_DIE:
+                    out.write("T" + transaction + " ABORTED by wait-die on variable x" + cause);
+                    break;
+                case WOUND_WAIT:
+                    out.write("T" + transaction + " ABORTED by wound-wait on variable x" + cause);
+                    break;
+                default:
+                    out.write("T" + transaction + " ABORTED");
+                    break;
+            }
+            newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    public void restarted(int transaction, int retry) {
+        try {
+            out.write("T" + transaction + " restarted, retry " + retry);
+            newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    public void dumped(Dump dump) {
+        try {
+            out.write("\n=== output of dump ===");
+            newLine();
+
+            if (dump.getVariable() != 0) {
+                out.write("x" + dump.getVariable());
+                newLine();
+                for (Dump.Section section : dump.getSections()) {
+                    out.write("Site " + section.getSiteId() + ": " + section.getValue(0));
+                    newLine();
+                }
+                return;
+            }
+
+            for (Dump.Section section : dump.getSections()) {
+                out.write("Site " + section.getSiteId());
+                newLine();
+                for (int i = 0; i < section.size(); i++) {
+                    out.write("x" + section.getVariable(i) + ": " + section.getValue(i));
+                    newLine();
+                }
+                if (section.hasOthersInitial()) {
+                    out.write("All other variables have their initial values");
+                    newLine();
+                }
+                newLine();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    /**
+     * Ends a line the way println does on this platform
+     */
+    private void newLine() throws IOException {
+        out.write(System.lineSeparator());
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * <h1>Topology</h1>
+ * Layout of the database - how many sites and variables there are and
+ * where each variable lives.  A replicated variable is stored at every
+ * site, any other variable only at its home site.
+ * <p>
+ * The default is the original layout: 10 sites, variables x1 - x20,
+ * even variables replicated and odd variable xi at site 1 + i mod 10.
+ */
+
+package adb_project;
+
+
+import java.util.BitSet;
+
+
+public class Topology {
+
+    public static final Topology DEFAULT = new Topology(10, 20, 2);
+
+    private int siteCount;
+    private int variableCount;
+    private int replicationInterval;
+    private BitSet replicated;
+
+
+    /**
+     * Creates a Topology object
+     * @param siteCount - number of sites, numbered from 1
+     * @param variableCount - number of variables, numbered from 1
+     * @param replicationInterval - variable xi is replicated when i is a multiple
+     *                              of this.  1 replicates everything, 0 nothing
+     *
+     * <ul>
+     *      <li>replicated - IDs of the replicated variables, set one stride at a time</li>
+     * </ul>
+     */
+    public Topology(int siteCount, int variableCount, int replicationInterval) {
+        if (siteCount < 1 || variableCount < 1 || replicationInterval < 0) {
+            throw new IllegalArgumentException("Invalid topology: " + siteCount + " sites, "
+                    + variableCount + " variables, replication interval " + replicationInterval);
+        }
+        this.siteCount = siteCount;
+        this.variableCount = variableCount;
+        this.replicationInterval = replicationInterval;
+        this.replicated = new BitSet(variableCount + 1);
+        if (replicationInterval == 1) {
+            replicated.set(1, variableCount + 1);
+        } else if (replicationInterval > 1) {
+            for (int i = replicationInterval; i <= variableCount; i += replicationInterval) {
+                replicated.set(i);
+            }
+        }
+    }
+
+
+    /**
+     * Gets the number of sites
+     * @return int - site count
+     */
+    public int getSiteCount() {
+        return siteCount;
+    }
+
+
+    /**
+     * Gets the number of variables
+     * @return int - variable count
+     */
+    public int getVariableCount() {
+        return variableCount;
+    }
+
+
+    /**
+     * Checks whether a variable is replicated at every site
+     * @param varId - variable ID
+     * @return Boolean - true/false if replicated
+     */
+    public boolean isReplicated(int varId) {
+        return replicationInterval != 0 && varId % replicationInterval == 0;
+    }
+
+
+    /**
+     * Sets the bits of every replicated variable in a bit set, a word at a
+     * time rather than a variable at a time
+     * @param target - bit set indexed by variable ID
+     */
+    public void markReplicated(BitSet target) {
+        target.or(replicated);
+    }
+
+
+    /**
+     * Gets the only site a non replicated variable is stored at
+     * @param varId - variable ID
+     * @return int - site ID
+     */
+    public int getHomeSite(int varId) {
+        return 1 + varId % siteCount;
+    }
+
+
+    /**
+     * Checks whether a variable is stored at a site
+     * @param varId - variable ID
+     * @param siteId - site ID
+     * @return Boolean - true/false if the site stores the variable
+     */
+    public boolean isOnSite(int varId, int siteId) {
+        return varId >= 1 && varId <= variableCount
+                && (isReplicated(varId) || getHomeSite(varId) == siteId);
+    }
+
+
+    /**
+     * Counts the variables stored at a site
+     * @param siteId - site ID
+     * @return int - number of variables at the site
+     */
+    public int countVariablesOnSite(int siteId) {
+        int count = 0;
+        for (int i = 1; i <= variableCount; i++) {
+            if (isOnSite(i, siteId)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * toString method for a topology object
+     * @return String - details of a topology
+     */
+    public String toString() {
+        return siteCount + " sites, " + variableCount + " variables, replication interval "
+                + replicationInterval;
+    }
+}
@@ -10,9 +10,7 @@
 package adb_project;
 
 
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.Arrays;
 
 
 public class Transaction {
@@ -21,23 +19,27 @@ public class Transaction {
     private Boolean readOnly;
     private int startTime;
     private Boolean running;
-    private HashMap<String, LinkedList<Transaction>> dependsOn;
-    private Queue<String> variablesLocked;
-    private HashMap<String, Instruction> variablesLockType;
-    private HashMap<Integer, Integer> onSites;
+    private IntSet variablesLocked;
+    private IntMap<Instruction> variablesLockType;
+    private int[] onSites;
     private Instruction currentInstruction;
+    private WaitQueue.Node firstQueued;
+    private int operations;
 
     /**
      * Creates an Instruction object.  Several data structures are used to keep track of what
      * the transaction is doing.
      * <ul>
-     *      <li>variablesLocked - a queue keeping track of the variables that the transaction
-     *          has locked</li>
-     *      <li>variablesLockType - HashMap which is used to check whether a transaction is trying
-     *          to read something it has write locked</li>
-     *      <li>onSites - Keeps track of what site the transaction is on</li>
+     *      <li>variablesLocked - the variables that the transaction has locked, in the
+     *          order they were locked</li>
+     *      <li>variablesLockType - the instruction each lock was taken for, used to check
+     *          whether a transaction is trying to read something it has write locked.  The
+     *          lock mode is the instruction's opcode and a write keeps its value for reads</li>
+     *      <li>onSites - lock count on each site indexed by site ID</li>
      *      <li>currentInstruction - keep the latest instruction object so that the system knows
      *          what the transaction is doing - mostly for when the transaction is in a queue</li>
+     *      <li>firstQueued - first of the transaction's entries in lock and wait queues, the
+     *          entries are linked to each other so they can all be removed on abort</li>
      * </ul>
      * @param id - transaction id
      * @param readOnly - whether the transaction is read only
@@ -50,10 +52,9 @@ public class Transaction {
         this.readOnly = readOnly;
         this.startTime = startTime;
         this.running = true;
-        this.variablesLocked = new LinkedList<>();
-        this.variablesLockType = new HashMap<>();
-        this.dependsOn = new HashMap<>();
-        this.onSites = initializeOnSites();
+        this.variablesLocked = null;
+        this.variablesLockType = null;
+        this.onSites = null;
         this.currentInstruction = instruction;
     }
 
@@ -67,49 +68,6 @@ public class Transaction {
     }
 
 
-    /**
-     * Keeps track of the transaction's current dependecies
-     * @param varId - Variable Id
-     * @param t - Transaction object
-     */
-    public void addToDependsOn(String varId, Transaction t) {
-        if(dependsOn.get(varId) != null) {
-            dependsOn.get(varId).add(t);
-        } else {
-            LinkedList<Transaction> temp = new LinkedList<>();
-            temp.add(t);
-            dependsOn.put(varId, temp);
-        }
-    }
-
-
-    /**
-     * Gets transaction's current depends on list
-     */
-    public HashMap<String, LinkedList<Transaction>> getDependsOn() {
-        return dependsOn;
-    }
-
-
-    /**
-     * Check if a transaction currently depends on anything
-     */
-    public Boolean checkDependsOn() {
-        return (dependsOn.size() > 0);
-    }
-
-
-    /**
-     * Removes a variable dependency
-     * @param varId - variable Id
-     */
-    public void removeFromDependsOn(String varId) {
-        if(dependsOn.get(varId) != null) {
-            dependsOn.remove(varId);
-        }
-    }
-
-
     /**
      * Checks whether transaction is read only
      * @return Boolean - true/false whethe transaction is read only
@@ -147,79 +105,140 @@ public class Transaction {
 
 
     /**
-     * Adds variable ID to locked variables
-     * @param varId - string variable ID
+     * Gets the first of the transaction's wait queue entries
+     * @return WaitQueue.Node - queue entry or null if the transaction is not waiting
+     */
+    public WaitQueue.Node getFirstQueued() {
+        return firstQueued;
+    }
+
+
+    /**
+     * Sets the first of the transaction's wait queue entries.  Only used by WaitQueue
+     * @param node - queue entry
+     */
+    public void setFirstQueued(WaitQueue.Node node) {
+        firstQueued = node;
+    }
+
+
+    /**
+     * Adds variable ID to locked variables.  The bookkeeping is only created
+     * once the transaction takes its first lock, so read-only transactions
+     * never allocate it
+     * @param varId - variable ID
      */
-    public void addLockedVariable(String varId) {
+    public void addLockedVariable(int varId) {
+        if(variablesLocked == null) {
+            variablesLocked = new IntSet();
+        }
         variablesLocked.add(varId);
     }
 
 
     /**
-     * Queue for variables that are locked
-     * @return Queue - string queue of variable ids
+     * Checks whether the transaction has locked variables left
+     * @return Boolean - true/false whether there are locked variables
      */
-    public Queue<String> getVariablesLocked() {
-        return variablesLocked;
+    public boolean hasLockedVariables() {
+        return variablesLocked != null && !variablesLocked.isEmpty();
     }
 
 
     /**
-     * Adds variable and instruction to hashmap
+     * Removes and returns the variable that was locked first, so locks are
+     * released in the order they were taken, not by variable ID
+     * @return int - variable ID or -1 if there are no locked variables
+     */
+    public int pollLockedVariable() {
+        if(!hasLockedVariables()) {
+            return -1;
+        }
+        return variablesLocked.removeFirst();
+    }
+
+
+    /**
+     * Adds variable and instruction to the lock types
      * @param varId - variable id
      * @param instruction - instruction object
      */
-    public void addLockedVariableType(String varId, Instruction instruction) {
+    public void addLockedVariableType(int varId, Instruction instruction) {
+        if(variablesLockType == null) {
+            variablesLockType = new IntMap<>();
+        }
         variablesLockType.put(varId, instruction);
     }
 
 
     /**
-     * Removes a variable from lock variable from Queue
+     * Removes a variable from the locked variables and lock types
      * @param varId - variable id
      */
-    public void removeLockedVariable(String varId) {
+    public void removeLockedVariable(int varId) {
         removeLockedVariableType(varId);
-        Queue<String> temp = new LinkedList<>();
-        while(!variablesLocked.isEmpty()) {
-            if(!variablesLocked.peek().equals(varId)) {
-                temp.add(variablesLocked.remove());
-            } else {
-                variablesLocked.remove();
-            }
+        if(variablesLocked != null) {
+            variablesLocked.remove(varId);
         }
-        variablesLocked = temp;
     }
 
 
     /**
-     * Removes a variable from lock variable type HashMap
+     * Removes a variable from lock variable types.  Synchronized since site
+     * workers commit a transaction's replicas in parallel
      * @param varId - variable id
      */
-    public void removeLockedVariableType(String varId) {
-        variablesLockType.remove(varId);
+    public synchronized void removeLockedVariableType(int varId) {
+        if(variablesLockType != null) {
+            variablesLockType.remove(varId);
+        }
     }
 
 
     /**
      * Gets lock type info
      * @param varId - variable id
+     * @return Instruction - instruction the lock was taken for or null if not locked
      */
-    public Instruction getLockedVariableInfo(String varId) {
-        return variablesLockType.get(varId);
+    public Instruction getLockedVariableInfo(int varId) {
+        return (variablesLockType == null) ? null : variablesLockType.get(varId);
     }
 
 
     /**
      * Checks lock type info
      * @param varId - variable id
+     * @return int - opcode of the instruction holding the lock or -1 if not locked
      */
-    public String checkLockedVariableType(String varId) {
-        if(variablesLockType.get(varId) != null) {
-            return variablesLockType.get(varId).getInstruction();
-        } else {
-            return null;
-        }
+    public int checkLockedVariableType(int varId) {
+        Instruction instruction = getLockedVariableInfo(varId);
+        return (instruction == null) ? -1 : instruction.getOpcode();
+    }
+
+
+    /**
+     * Counts a read or write handed to the Data Manager for the transaction
+     */
+    public void countOperation() {
+        operations++;
+    }
+
+
+    /**
+     * Gets how many reads and writes the transaction has issued
+     * @return int - operation count
+     */
+    public int getOperationCount() {
+        return operations;
+    }
+
+
+    /**
+     * Checks whether the transaction is waiting in a lock or wait queue
+     * @return Boolean - true/false whether it is queued
+     */
+    public boolean isQueued() {
+        return firstQueued != null;
     }
 
 
@@ -241,45 +260,36 @@ public class Transaction {
 
 
     /**
-     * Returns a HashMap of all the sites the transaction is on
-     * @return HashMap - HashMap of sites the transaction is on
+     * Returns how many locks the transaction has on a site
+     * @param siteId - site ID
+     * @return int - lock count, 0 if the transaction is not on the site
      */
-    public HashMap<Integer, Integer> getOnSites() {
-        return onSites;
+    public synchronized int getOnSites(int siteId) {
+        return (onSites == null || siteId >= onSites.length) ? 0 : onSites[siteId];
     }
 
 
     /**
-     * Initializes the onSite HashMap.  Value is incremented/decremented
-     * when a transaction is on/off a site
-     * @return HashMap - initializes HashMap with 0s
+     * Increments the lock count for a site when a transaction is on
+     * a site.  Synchronized since site workers update it in parallel
      */
-    private HashMap<Integer, Integer> initializeOnSites() {
-
-        HashMap<Integer, Integer> temp = new HashMap<>();
-
-        for (int i = 1; i <= 10; i++) {
-            temp.put(i, 0);
+    public synchronized void plusOnSites(int siteId) {
+        if(onSites == null || siteId >= onSites.length) {
+            onSites = Arrays.copyOf((onSites == null) ? new int[0] : onSites, siteId + 1);
         }
-        return temp;
-    }
-
-
-    /**
-     * Increments the value in onSites HashMap when a transaction is on
-     * a site
-     */
-    public void plusOnSites(int siteId) {
-        onSites.put(siteId, onSites.get(siteId) + 1);
+        onSites[siteId]++;
     }
 
 
     /**
-     * Decrements the value in onSites HashMap when a transaction is off
+     * Decrements the lock count for a site when a transaction is off
      * a site
      */
-    public void decOnSites(int siteId) {
-        onSites.put(siteId, onSites.get(siteId) - 1);
+    public synchronized void decOnSites(int siteId) {
+        if(onSites == null || siteId >= onSites.length) {
+            onSites = Arrays.copyOf((onSites == null) ? new int[0] : onSites, siteId + 1);
+        }
+        onSites[siteId]--;
     }
 
 
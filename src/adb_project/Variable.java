@@ -10,41 +10,117 @@
 
 package adb_project;
 
-import java.util.HashMap;
+import java.util.Arrays;
 
 
 public class Variable {
 
-    private String id;
+    private static final int INITIAL_VERSIONS = 4;
+
+    private int index;
     private int value;
-    private HashMap<Integer, Integer> previousValues;
-    private Boolean okToRead;
+    private int[] versionTimes;
+    private int[] versionValues;
+    private int versionCount;
     private Boolean committed;
 
     /**
-     * Variable Contructor. okToRead is a check during site fail/recover.
-     * previousValues keeps track of the updated values of the variable
-     * by time.
+     * Variable Contructor.
+     * versionTimes / versionValues keep track of the updated values of the
+     * variable by time.  The two arrays are parallel and sorted by time so
+     * a snapshot read is a binary search.
      * @param i - variable id
      */
     public Variable(int i) {
-        this.id = "x" + Integer.toString(i);
-        this.value = i * 10;
-        this.previousValues = initializePrevValues(i);
+        this.index = i;
+        this.value = initialValue(i);
+        initializePrevValues(i);
         this.committed = false;
-        this.okToRead = true;
     }
 
 
     /**
-     * Initializese the HashMap that keeps track of previous values
-     * of the variable
-     * @return HashMap
+     * Initializes the version chain that keeps track of previous values
+     * of the variable with the initial value at time 1
+     * @param i - variable id
+     */
+    private void initializePrevValues(int i) {
+        versionTimes = new int[INITIAL_VERSIONS];
+        versionValues = new int[INITIAL_VERSIONS];
+        versionTimes[0] = 1;
+        versionValues[0] = initialValue(i);
+        versionCount = 1;
+    }
+
+
+    /**
+     * Rebuilds a committed variable from a checkpoint
+     * @param i - variable id
+     * @param value - current value
+     * @param times - version times in order
+     * @param values - version values, parallel to times
+     * @param count - number of versions
+     * @return Variable - restored variable
+     */
+    public static Variable restore(int i, int value, int[] times, int[] values, int count) {
+        Variable variable = new Variable(i);
+        int size = Math.max(count, INITIAL_VERSIONS);
+        variable.value = value;
+        variable.versionTimes = Arrays.copyOf(times, size);
+        variable.versionValues = Arrays.copyOf(values, size);
+        variable.versionCount = count;
+        variable.committed = true;
+        return variable;
+    }
+
+
+    /**
+     * Copies the variable so it can be written out while the original keeps changing
+     * @return Variable - copy of the variable
+     */
+    public Variable copy() {
+        Variable copy = restore(index, value, versionTimes, versionValues, versionCount);
+        copy.committed = committed;
+        return copy;
+    }
+
+
+    /**
+     * Gets the time of a version
+     * @param i - index into the version chain, oldest first
+     * @return int - time the version was committed
+     */
+    public int getVersionTime(int i) {
+        return versionTimes[i];
+    }
+
+
+    /**
+     * Gets the value of a version
+     * @param i - index into the version chain, oldest first
+     * @return int - value of the version
      */
-    private HashMap<Integer, Integer> initializePrevValues(int i) {
-        HashMap<Integer, Integer> temp = new HashMap<>();
-        temp.put(1, i * 10);
-        return temp;
+    public int getVersionValue(int i) {
+        return versionValues[i];
+    }
+
+
+    /**
+     * Gets the value a variable starts with - xi starts at 10 * i
+     * @param i - variable id
+     * @return int - initial value
+     */
+    public static int initialValue(int i) {
+        return i * 10;
+    }
+
+
+    /**
+     * Gets the variable's index - variable xi has index i
+     * @return int - variable index
+     */
+    public int getIndex() {
+        return index;
     }
 
 
@@ -62,16 +138,40 @@ public class Variable {
      * @param time - when it was updated
      */
     public int getPreviousValue(int time) {
+        int index = findVersion(time);
+        return (index < 0) ? -1 : versionValues[index];
+    }
 
-        HashMap<Integer, Integer> temp = this.previousValues;
-        Integer value = -1;
 
-        for (HashMap.Entry<Integer, Integer> entry : temp.entrySet()) {
-            if (time >= entry.getKey()) {
-                value = entry.getValue();
+    /**
+     * Gets the number of versions currently kept for the variable
+     * @return int - number of versions
+     */
+    public int getVersionCount() {
+        return versionCount;
+    }
+
+
+    /**
+     * Binary search for the newest version written at or before time
+     * @param time - snapshot time
+     * @return int - index into the version chain or -1 if there is none
+     */
+    private int findVersion(int time) {
+        int low = 0;
+        int high = versionCount - 1;
+        int found = -1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (versionTimes[mid] <= time) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
             }
         }
-        return value;
+        return found;
     }
 
 
@@ -82,27 +182,65 @@ public class Variable {
      * @param time - when it was updated
      */
     public void updateValue(int value, int time) {
-        this.previousValues.put(time, value);
+        addVersion(value, time);
         this.value = value;
     }
 
 
     /**
-     * Sets whether it's ok to read a variable after
-     * a site failure - just for even variables
-     * @param okNotOk - Boolean field
+     * Adds a version to the chain.  Commits arrive in time order so this is
+     * normally an append; a commit at the same time replaces that version.
+     * @param value - updated value
+     * @param time - when it was updated
      */
-    public void setOkToRead(Boolean okNotOk) {
-        okToRead = okNotOk;
+    private void addVersion(int value, int time) {
+        int newest = versionCount - 1;
+        int index = (versionTimes[newest] <= time) ? newest : findVersion(time);
+
+        if (index >= 0 && versionTimes[index] == time) {
+            versionValues[index] = value;
+            return;
+        }
+
+        if (versionCount == versionTimes.length) {
+            int size = versionTimes.length * 2;
+            versionTimes = Arrays.copyOf(versionTimes, size);
+            versionValues = Arrays.copyOf(versionValues, size);
+        }
+
+        // Shift only happens if a commit is older than the newest version
+        int insert = index + 1;
+        int move = versionCount - insert;
+        if (move > 0) {
+            System.arraycopy(versionTimes, insert, versionTimes, insert + 1, move);
+            System.arraycopy(versionValues, insert, versionValues, insert + 1, move);
+        }
+
+        versionTimes[insert] = time;
+        versionValues[insert] = value;
+        versionCount++;
     }
 
 
     /**
-     * Checks whether it's ok to read a variable after
-     * a site failure - just for even variables
+     * Garbage collects versions no read-only transaction can see anymore.
+     * The newest version at or below the low-water mark is kept since a
+     * reader that started at the mark still needs it.
+     * @param lowWaterMark - start time of the oldest active read-only transaction
+     * @return int - number of versions reclaimed
      */
-    public Boolean getOkToRead() {
-        return okToRead;
+    public int pruneVersions(int lowWaterMark) {
+        int keep = findVersion(lowWaterMark);
+
+        if (keep <= 0) {
+            return 0;
+        }
+
+        int remaining = versionCount - keep;
+        System.arraycopy(versionTimes, keep, versionTimes, 0, remaining);
+        System.arraycopy(versionValues, keep, versionValues, 0, remaining);
+        versionCount = remaining;
+        return keep;
     }
 
 
@@ -129,7 +267,7 @@ public class Variable {
      */
     public String toString() {
         String result = "";
-        result += "\nid: " + this.id +"\n";
+        result += "\nid: x" + this.index +"\n";
         result += String.format("data: %1d\n", this.value);
         return result;
     }
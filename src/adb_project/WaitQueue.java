@@ -0,0 +1,261 @@
+/**
+ * <h1>WaitQueue</h1>
+ * FIFO queue of transactions waiting on a variable or a site.  The
+ * queue is a doubly linked list of nodes, and every node is also linked
+ * into a list kept on its transaction, so a transaction can be taken
+ * out of all the queues it waits in without searching them.  Removing a
+ * transaction costs O(number of queues it is in).  An entry can carry the
+ * instruction its transaction is waiting to run, so a waiter is resumed
+ * with its own pending operation.
+ * <p>
+ * A queue can be given a depth gauge shared by many queues, which is kept
+ * at the number of transactions waiting in all of them.
+ */
+
+package adb_project;
+
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+public class WaitQueue implements Iterable<Transaction> {
+
+    private Node head;
+    private Node tail;
+    private int size;
+    private Metrics.Counter depth;
+
+
+    /**
+     * Creates an empty queue
+     */
+    public WaitQueue() {
+        this(null);
+    }
+
+
+    /**
+     * Creates an empty queue that keeps a depth gauge up to date
+     * @param depth - gauge added to and taken away from as transactions come
+     *                and go, null for none
+     */
+    public WaitQueue(Metrics.Counter depth) {
+        this.head = null;
+        this.tail = null;
+        this.size = 0;
+        this.depth = depth;
+    }
+
+
+    /**
+     * Adds a transaction to the back of the queue
+     * @param T - transaction object
+     */
+    public void add(Transaction T) {
+        add(T, null);
+    }
+
+
+    /**
+     * Adds a transaction to the back of the queue with the instruction it waits to run
+     * @param T - transaction object
+     * @param I - pending instruction, null for none
+     */
+    public void add(Transaction T, Instruction I) {
+        Node node = new Node(this, T, I);
+        node.prev = tail;
+        if (tail == null) {
+            head = node;
+        } else {
+            tail.next = node;
+        }
+        tail = node;
+        size++;
+        if (depth != null) {
+            depth.increment();
+        }
+        node.linkToTransaction();
+    }
+
+
+    /**
+     * Adds a transaction to the front of the queue with the instruction it waits to run
+     * @param T - transaction object
+     * @param I - pending instruction, null for none
+     */
+    public void addFirst(Transaction T, Instruction I) {
+        Node node = new Node(this, T, I);
+        node.next = head;
+        if (head == null) {
+            tail = node;
+        } else {
+            head.prev = node;
+        }
+        head = node;
+        size++;
+        if (depth != null) {
+            depth.increment();
+        }
+        node.linkToTransaction();
+    }
+
+
+    /**
+     * Removes the transaction at the front of the queue
+     * @return Transaction - transaction object or null if the queue is empty
+     */
+    public Transaction poll() {
+        if (head == null) {
+            return null;
+        }
+        Transaction T = head.transaction;
+        head.unlink();
+        return T;
+    }
+
+
+    /**
+     * Gets the transaction at the front of the queue without removing it
+     * @return Transaction - transaction object or null if the queue is empty
+     */
+    public Transaction peek() {
+        return (head == null) ? null : head.transaction;
+    }
+
+
+    /**
+     * Gets the pending instruction of the transaction at the front of the queue
+     * @return Instruction - instruction object or null if the queue is empty or
+     *                       the entry has none
+     */
+    public Instruction peekInstruction() {
+        return (head == null) ? null : head.instruction;
+    }
+
+
+    /**
+     * Number of transactions in the queue
+     * @return int - size
+     */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * Checks whether the queue is empty
+     * @return Boolean - true/false whether the queue is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+
+    /**
+     * Takes a transaction out of every queue it is waiting in
+     * @param T - transaction object
+     * @return int - number of queue entries removed
+     */
+    public static int removeAll(Transaction T) {
+        int removed = 0;
+        while (T.getFirstQueued() != null) {
+            T.getFirstQueued().unlink();
+            removed++;
+        }
+        return removed;
+    }
+
+
+    /**
+     * Iterates the waiting transactions front to back without copying.  The
+     * queue must not be changed while iterating
+     * @return Iterator - transactions in queue order
+     */
+    public Iterator<Transaction> iterator() {
+        return new Iterator<Transaction>() {
+            private Node next = head;
+
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            public Transaction next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Transaction T = next.transaction;
+                next = next.next;
+                return T;
+            }
+        };
+    }
+
+
+    /**
+     * An entry of a transaction in a queue.  prev / next link the queue and
+     * prevOfTransaction / nextOfTransaction link the entries of one transaction
+     */
+    public static class Node {
+
+        private WaitQueue queue;
+        private Transaction transaction;
+        private Instruction instruction;
+        private Node prev;
+        private Node next;
+        private Node prevOfTransaction;
+        private Node nextOfTransaction;
+
+
+        private Node(WaitQueue queue, Transaction transaction, Instruction instruction) {
+            this.queue = queue;
+            this.transaction = transaction;
+            this.instruction = instruction;
+        }
+
+
+        /**
+         * Adds the node to the front of its transaction's list of entries
+         */
+        private void linkToTransaction() {
+            Node first = transaction.getFirstQueued();
+            nextOfTransaction = first;
+            if (first != null) {
+                first.prevOfTransaction = this;
+            }
+            transaction.setFirstQueued(this);
+        }
+
+
+        /**
+         * Removes the node from its queue and from its transaction's list
+         */
+        private void unlink() {
+            if (prev == null) {
+                queue.head = next;
+            } else {
+                prev.next = next;
+            }
+            if (next == null) {
+                queue.tail = prev;
+            } else {
+                next.prev = prev;
+            }
+            queue.size--;
+            if (queue.depth != null) {
+                queue.depth.decrement();
+            }
+
+            if (prevOfTransaction == null) {
+                transaction.setFirstQueued(nextOfTransaction);
+            } else {
+                prevOfTransaction.nextOfTransaction = nextOfTransaction;
+            }
+            if (nextOfTransaction != null) {
+                nextOfTransaction.prevOfTransaction = prevOfTransaction;
+            }
+
+            prev = next = prevOfTransaction = nextOfTransaction = null;
+        }
+    }
+}
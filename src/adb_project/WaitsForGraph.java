@@ -0,0 +1,362 @@
+/**
+ * <h1>WaitsForGraph</h1>
+ * Persistent waits-for graph used for deadlock detection.  Edges are
+ * added and removed as transactions queue for and release variables
+ * instead of rebuilding the graph on every check.  Cycles can be looked
+ * for one new edge at a time, or all at once in a periodic pass.
+ */
+
+package adb_project;
+
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+
+public class WaitsForGraph {
+
+    private HashMap<Transaction, HashMap<Integer, HashSet<Transaction>>> edgesByVariable;
+    private HashMap<Transaction, HashMap<Transaction, Integer>> outgoing;
+    private HashMap<Transaction, HashSet<Transaction>> incoming;
+    private LinkedList<Transaction[]> newEdges;
+
+
+    /**
+     * Creates an empty waits-for graph.
+     * <ul>
+     *      <li>edgesByVariable - the transactions waited on per variable so edges can be
+     *          dropped when a wait for a variable ends</li>
+     *      <li>outgoing - adjacency with a count of how many variables back each edge</li>
+     *      <li>incoming - reverse adjacency so a finished transaction can be unlinked</li>
+     *      <li>newEdges - edges added since the last cycle check</li>
+     * </ul>
+     */
+    public WaitsForGraph() {
+        edgesByVariable = new HashMap<>();
+        outgoing = new HashMap<>();
+        incoming = new HashMap<>();
+        newEdges = new LinkedList<>();
+    }
+
+
+    /**
+     * Adds an edge from a transaction to a transaction it waits on for a variable.
+     * Duplicate edges for the same variable are ignored.
+     * @param from - waiting transaction
+     * @param varId - variable ID
+     * @param to - transaction waited on
+     */
+    public void addEdge(Transaction from, int varId, Transaction to) {
+        if(from == to) {
+            return;
+        }
+
+        HashMap<Integer, HashSet<Transaction>> byVariable =
+                edgesByVariable.computeIfAbsent(from, k -> new HashMap<>());
+        if(!byVariable.computeIfAbsent(varId, k -> new HashSet<>()).add(to)) {
+            return;
+        }
+
+        HashMap<Transaction, Integer> targets = outgoing.computeIfAbsent(from, k -> new HashMap<>());
+        Integer count = targets.get(to);
+        if(count == null) {
+            targets.put(to, 1);
+            incoming.computeIfAbsent(to, k -> new HashSet<>()).add(from);
+            newEdges.add(new Transaction[] {from, to});
+        } else {
+            targets.put(to, count + 1);
+        }
+    }
+
+
+    /**
+     * Removes the edges a transaction has for a variable - it is no longer
+     * waiting on it
+     * @param from - waiting transaction
+     * @param varId - variable ID
+     */
+    public void removeEdges(Transaction from, int varId) {
+        HashMap<Integer, HashSet<Transaction>> byVariable = edgesByVariable.get(from);
+        if(byVariable == null) {
+            return;
+        }
+
+        HashSet<Transaction> targets = byVariable.remove(varId);
+        if(targets == null) {
+            return;
+        }
+
+        for(Transaction to : targets) {
+            unlink(from, to);
+        }
+
+        if(byVariable.isEmpty()) {
+            edgesByVariable.remove(from);
+        }
+    }
+
+
+    /**
+     * Removes a transaction and every edge touching it.  Used when a transaction
+     * ends or is aborted
+     * @param T - transaction object
+     */
+    public void removeTransaction(Transaction T) {
+        edgesByVariable.remove(T);
+
+        HashMap<Transaction, Integer> targets = outgoing.remove(T);
+        if(targets != null) {
+            for(Transaction to : targets.keySet()) {
+                HashSet<Transaction> in = incoming.get(to);
+                if(in != null) {
+                    in.remove(T);
+                    if(in.isEmpty())
+                        incoming.remove(to);
+                }
+            }
+        }
+
+        HashSet<Transaction> sources = incoming.remove(T);
+        if(sources != null) {
+            for(Transaction from : sources) {
+                HashMap<Transaction, Integer> out = outgoing.get(from);
+                if(out != null) {
+                    out.remove(T);
+                    if(out.isEmpty())
+                        outgoing.remove(from);
+                }
+
+                HashMap<Integer, HashSet<Transaction>> byVariable = edgesByVariable.get(from);
+                if(byVariable != null) {
+                    Iterator<HashSet<Transaction>> it = byVariable.values().iterator();
+                    while(it.hasNext()) {
+                        HashSet<Transaction> waits = it.next();
+                        waits.remove(T);
+                        if(waits.isEmpty())
+                            it.remove();
+                    }
+                    if(byVariable.isEmpty())
+                        edgesByVariable.remove(from);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Checks whether a transaction is currently waiting on anything
+     * @param T - transaction object
+     * @return Boolean - true/false whether the transaction has outgoing edges
+     */
+    public Boolean isWaiting(Transaction T) {
+        return outgoing.containsKey(T);
+    }
+
+
+    /**
+     * Checks whether there are edges that have not been checked for a cycle yet
+     * @return Boolean - true/false whether there are unchecked edges
+     */
+    public Boolean hasNewEdges() {
+        return !newEdges.isEmpty();
+    }
+
+
+    /**
+     * Looks for a cycle closed by one of the edges added since the last call.
+     * Since every cycle is broken as soon as it is found, any new cycle has to
+     * go through a new edge from -> to, so only a search from to back to from
+     * is needed.  Edges that no longer exist are skipped.
+     * @return ArrayList - transactions on the cycle or null if there is none
+     */
+    public ArrayList<Transaction> findNewCycle() {
+        while(!newEdges.isEmpty()) {
+            Transaction[] edge = newEdges.remove();
+            Transaction from = edge[0];
+            Transaction to = edge[1];
+
+            if(outgoing.get(from) == null || !outgoing.get(from).containsKey(to)) {
+                continue;
+            }
+
+            ArrayList<Transaction> path = findPath(to, from);
+            if(path != null) {
+                return path;
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Finds every deadlock reachable from the edges added since the last check
+     * in one pass - the strongly connected components with more than one
+     * transaction, found with Tarjan's algorithm.  Each component holds one
+     * or more cycles.  As every cycle is broken once found, a new one has to
+     * go through a new edge, so the search starts only from their sources and
+     * the part of the graph nobody added to is not walked.  The unchecked
+     * edges are all covered by the pass so they are cleared
+     * @param recheck - transactions to search from as well, e.g. what is left of
+     *                  a component that was just broken
+     * @return ArrayList - the transactions of each deadlocked component
+     */
+    public ArrayList<ArrayList<Transaction>> findDeadlocks(List<Transaction> recheck) {
+        ArrayList<Transaction> roots = new ArrayList<>(recheck);
+        for(Transaction[] edge : newEdges) {
+            roots.add(edge[0]);
+        }
+        newEdges.clear();
+
+        ArrayList<ArrayList<Transaction>> deadlocks = new ArrayList<>();
+        HashMap<Transaction, int[]> visited = new HashMap<>();
+        ArrayDeque<Transaction> component = new ArrayDeque<>();
+        ArrayDeque<Transaction> path = new ArrayDeque<>();
+        ArrayDeque<Iterator<Transaction>> pending = new ArrayDeque<>();
+        int counter = 0;
+
+        for(Transaction root : roots) {
+            if(visited.containsKey(root) || !outgoing.containsKey(root)) {
+                continue;
+            }
+
+            // {index, lowlink, on component stack}
+            visited.put(root, new int[] {counter, counter, 1});
+            counter++;
+            component.push(root);
+            path.push(root);
+            pending.push(successors(root));
+
+            while(!path.isEmpty()) {
+                Transaction v = path.peek();
+                Iterator<Transaction> it = pending.peek();
+
+                if(it.hasNext()) {
+                    Transaction w = it.next();
+                    int[] state = visited.get(w);
+                    if(state == null) {
+                        visited.put(w, new int[] {counter, counter, 1});
+                        counter++;
+                        component.push(w);
+                        path.push(w);
+                        pending.push(successors(w));
+                    } else if(state[2] == 1) {
+                        int[] vState = visited.get(v);
+                        vState[1] = Math.min(vState[1], state[0]);
+                    }
+                    continue;
+                }
+
+                path.pop();
+                pending.pop();
+                int[] vState = visited.get(v);
+
+                if(!path.isEmpty()) {
+                    int[] parent = visited.get(path.peek());
+                    parent[1] = Math.min(parent[1], vState[1]);
+                }
+
+                if(vState[1] == vState[0]) {
+                    ArrayList<Transaction> members = new ArrayList<>();
+                    Transaction t;
+                    do {
+                        t = component.pop();
+                        visited.get(t)[2] = 0;
+                        members.add(t);
+                    } while(t != v);
+
+                    if(members.size() > 1) {
+                        deadlocks.add(members);
+                    }
+                }
+            }
+        }
+        return deadlocks;
+    }
+
+
+    /**
+     * Gets the transactions a transaction waits on
+     * @param T - transaction object
+     * @return Iterator - transactions waited on, empty if it is not waiting
+     */
+    private Iterator<Transaction> successors(Transaction T) {
+        HashMap<Transaction, Integer> targets = outgoing.get(T);
+        return (targets == null) ? Collections.emptyIterator() : targets.keySet().iterator();
+    }
+
+
+    /**
+     * Iterative DFS for a path between two transactions
+     * @param start - transaction the search starts from
+     * @param target - transaction being searched for
+     * @return ArrayList - transactions on the path or null if there is none
+     */
+    private ArrayList<Transaction> findPath(Transaction start, Transaction target) {
+        HashMap<Transaction, Transaction> parent = new HashMap<>();
+        ArrayDeque<Transaction> stack = new ArrayDeque<>();
+
+        parent.put(start, start);
+        stack.push(start);
+
+        while(!stack.isEmpty()) {
+            Transaction v = stack.pop();
+
+            if(v == target) {
+                ArrayList<Transaction> path = new ArrayList<>();
+                for(Transaction t = v; t != start; t = parent.get(t)) {
+                    path.add(t);
+                }
+                path.add(start);
+                return path;
+            }
+
+            HashMap<Transaction, Integer> targets = outgoing.get(v);
+            if(targets != null) {
+                for(Transaction w : targets.keySet()) {
+                    if(!parent.containsKey(w)) {
+                        parent.put(w, v);
+                        stack.push(w);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Removes one variable's worth of an edge and drops the edge once no
+     * variable backs it anymore
+     * @param from - waiting transaction
+     * @param to - transaction waited on
+     */
+    private void unlink(Transaction from, Transaction to) {
+        HashMap<Transaction, Integer> targets = outgoing.get(from);
+        if(targets == null || targets.get(to) == null) {
+            return;
+        }
+
+        int count = targets.get(to) - 1;
+        if(count > 0) {
+            targets.put(to, count);
+            return;
+        }
+
+        targets.remove(to);
+        if(targets.isEmpty())
+            outgoing.remove(from);
+
+        HashSet<Transaction> in = incoming.get(to);
+        if(in != null) {
+            in.remove(from);
+            if(in.isEmpty())
+                incoming.remove(to);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/**
+ * <h1>WorkloadGenerator</h1>
+ * Writes synthetic traces in the same format Parser reads.  A fixed
+ * number of transactions are open at once and their operations are
+ * interleaved at random, so the trace has real lock contention.  Lines
+ * are written as they are generated and only the open transactions are
+ * kept in memory, so traces with millions of operations stream straight
+ * to disk.  The same seed and settings always produce the same trace.
+ * <p>
+ * Usage: WorkloadGenerator output [--name=value ...]
+ * <ul>
+ *      <li>seed - random seed (1)</li>
+ *      <li>transactions - number of transactions (1000)</li>
+ *      <li>ops - reads and writes per transaction (4)</li>
+ *      <li>concurrency - transactions open at the same time (4)</li>
+ *      <li>readRatio - share of read-write transaction operations that are reads (0.5)</li>
+ *      <li>readOnly - share of transactions that are read only (0.1)</li>
+ *      <li>skew - uniform or zipf:theta, e.g. zipf:0.99 (uniform)</li>
+ *      <li>evenShare - share of operations on even, replicated variables (0.5)</li>
+ *      <li>variables - number of variables (20)</li>
+ *      <li>sites - number of sites (10)</li>
+ *      <li>failEvery - operations between a site failing or recovering, 0 for never (0)</li>
+ *      <li>dump - true/false whether to end the trace with dump() (false)</li>
+ * </ul>
+ */
+
+package adb_project;
+
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+
+public class WorkloadGenerator {
+
+    private long seed = 1;
+    private int transactions = 1000;
+    private int opsPerTransaction = 4;
+    private int concurrency = 4;
+    private double readRatio = 0.5;
+    private double readOnlyShare = 0.1;
+    private double zipfTheta = 0;
+    private double evenShare = 0.5;
+    private int variableCount = 20;
+    private int siteCount = 10;
+    private int failEvery = 0;
+    private boolean dump = false;
+
+    private Random random;
+    private double[] evenCdf;
+    private double[] oddCdf;
+
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: WorkloadGenerator output [--name=value ...]");
+            return;
+        }
+
+        WorkloadGenerator generator = new WorkloadGenerator();
+        for (int i = 1; i < args.length; i++) {
+            generator.setOption(args[i]);
+        }
+
+        long start = System.nanoTime();
+        long lines;
+        try (BufferedWriter out = Files.newBufferedWriter(Paths.get(args[0]), StandardCharsets.US_ASCII)) {
+            lines = generator.generate(out);
+        }
+        System.out.printf("Wrote %d lines to %s in %.1f ms%n", lines, args[0],
+                (System.nanoTime() - start) / 1e6);
+    }
+
+
+    /**
+     * Sets an option from a command line argument
+     * @param argument - option in the form --name=value
+     */
+    public void setOption(String argument) {
+        int split = argument.indexOf('=');
+        if (!argument.startsWith("--") || split < 0) {
+            throw new IllegalArgumentException("Expected --name=value but got " + argument);
+        }
+
+        String name = argument.substring(2, split);
+        String value = argument.substring(split + 1);
+
+        switch (name) {
+            case "seed":
+                seed = Long.parseLong(value);
+                break;
+            case "transactions":
+                transactions = Integer.parseInt(value);
+                break;
+            case "ops":
+                opsPerTransaction = Integer.parseInt(value);
+                break;
+            case "concurrency":
+                concurrency = Integer.parseInt(value);
+                break;
+            case "readRatio":
+                readRatio = Double.parseDouble(value);
+                break;
+            case "readOnly":
+                readOnlyShare = Double.parseDouble(value);
+                break;
+            case "skew":
+                setSkew(value);
+                break;
+            case "evenShare":
+                evenShare = Double.parseDouble(value);
+                break;
+            case "variables":
+                variableCount = Integer.parseInt(value);
+                break;
+            case "sites":
+                siteCount = Integer.parseInt(value);
+                break;
+            case "failEvery":
+                failEvery = Integer.parseInt(value);
+                break;
+            case "dump":
+                dump = Boolean.parseBoolean(value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option: " + name);
+        }
+    }
+
+
+    /**
+     * Sets how variables are picked
+     * @param skew - uniform or zipf:theta
+     */
+    public void setSkew(String skew) {
+        if (skew.equals("uniform")) {
+            zipfTheta = 0;
+        } else if (skew.startsWith("zipf:")) {
+            zipfTheta = Double.parseDouble(skew.substring("zipf:".length()));
+        } else {
+            throw new IllegalArgumentException("Skew must be uniform or zipf:theta but got " + skew);
+        }
+    }
+
+
+    /**
+     * Writes the whole trace
+     * @param out - where the trace goes
+     * @return long - number of lines written
+     */
+    public long generate(Writer out) throws IOException {
+        if (variableCount < 2 || concurrency < 1 || opsPerTransaction < 0) {
+            throw new IllegalArgumentException("Need at least 2 variables, 1 open transaction and 0 ops");
+        }
+
+        random = new Random(seed);
+        evenCdf = buildCdf(variableCount / 2);
+        oddCdf = buildCdf((variableCount + 1) / 2);
+
+        ArrayList<int[]> open = new ArrayList<>();
+        int nextId = 1;
+        int failedSite = 0;
+        long operations = 0;
+        long lines = 0;
+
+        // Each open transaction is {id, operations left, read only}
+        while (nextId <= transactions || !open.isEmpty()) {
+            while (open.size() < concurrency && nextId <= transactions) {
+                boolean readOnly = random.nextDouble() < readOnlyShare;
+                out.write((readOnly ? "beginRO(T" : "begin(T") + nextId + ")\n");
+                open.add(new int[] {nextId, opsPerTransaction, readOnly ? 1 : 0});
+                nextId++;
+                lines++;
+            }
+
+            int pick = random.nextInt(open.size());
+            int[] transaction = open.get(pick);
+
+            if (transaction[1] == 0) {
+                out.write("end(T" + transaction[0] + ")\n");
+                open.set(pick, open.get(open.size() - 1));
+                open.remove(open.size() - 1);
+                lines++;
+                continue;
+            }
+
+            int variable = nextVariable();
+            if (transaction[2] == 1 || random.nextDouble() < readRatio) {
+                out.write("R(T" + transaction[0] + ",x" + variable + ")\n");
+            } else {
+                out.write("W(T" + transaction[0] + ",x" + variable + "," + random.nextInt(10000) + ")\n");
+            }
+            transaction[1]--;
+            operations++;
+            lines++;
+
+            // Sites go down and come back one at a time
+            if (failEvery > 0 && operations % failEvery == 0) {
+                if (failedSite == 0) {
+                    failedSite = 1 + random.nextInt(siteCount);
+                    out.write("fail(" + failedSite + ")\n");
+                } else {
+                    out.write("recover(" + failedSite + ")\n");
+                    failedSite = 0;
+                }
+                lines++;
+            }
+        }
+
+        if (failedSite != 0) {
+            out.write("recover(" + failedSite + ")\n");
+            lines++;
+        }
+        if (dump) {
+            out.write("dump()\n");
+            lines++;
+        }
+        return lines;
+    }
+
+
+    /**
+     * Picks a variable.  Parity is picked first so the even/odd mix holds
+     * whatever the skew, then the rank within that parity - rank 1 being
+     * the hottest under a Zipfian skew
+     * @return int - variable ID
+     */
+    private int nextVariable() {
+        boolean even = random.nextDouble() < evenShare;
+        int rank = (even ? sample(evenCdf) : sample(oddCdf)) + 1;
+        return even ? 2 * rank : 2 * rank - 1;
+    }
+
+
+    /**
+     * Cumulative distribution over ranks.  theta = 0 is uniform
+     * @param count - number of ranks
+     * @return double[] - cumulative probability of each rank
+     */
+    private double[] buildCdf(int count) {
+        double[] cdf = new double[count];
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += 1.0 / Math.pow(i + 1, zipfTheta);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < count; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+
+    /**
+     * Draws a rank from a cumulative distribution
+     * @param cdf - cumulative probability of each rank
+     * @return int - rank starting at 0
+     */
+    private int sample(double[] cdf) {
+        int i = Arrays.binarySearch(cdf, random.nextDouble());
+        i = (i < 0) ? -i - 1 : i;
+        return Math.min(i, cdf.length - 1);
+    }
+}